@@ -18,6 +18,8 @@ public enum Keyword {
 	FOREACH("foreach", false, false), 
 	IF("if", false, false), 
 	GROUP("group", true, true),				// attribute
+	KEY("key", false, false),
+	MATCH("match", true, true),				// attribute
 	NODE("node", false, false), 
 	OTHERWISE("otherwise", false, false),
 	PARAM("param", false, false), 
@@ -27,6 +29,7 @@ public enum Keyword {
 	SELECT("select", true, true),			// attribute
 	SORT("sort", null, false),
 	TRANSFORM("transform", false, false),
+	USE("use", true, true),					// attribute
 	VALUE("value", true, true),				// attribute
 	VARIABLE("variable", false, false), 
 	WHEN("when", false, false),
@@ -35,12 +38,15 @@ public enum Keyword {
 	static {
 		COMPARATOR.setAllowedIn(Arrays.asList(SORT));
 		GROUP.setAllowedIn(Arrays.asList(FOREACH));
+		KEY.setAllowedIn(Arrays.asList(TRANSFORM));
+		MATCH.setAllowedIn(Arrays.asList(KEY));
 		OTHERWISE.setAllowedIn(Arrays.asList(CHOOSE));
 		PARAM.setAllowedIn(Arrays.asList(TRANSFORM));
 		REVERSE.setAllowedIn(Arrays.asList(SORT));
 		SELECT.setAllowedIn(Arrays.asList(PARAM, VARIABLE));
 		SORT.setAllowedIn(Arrays.asList(FOREACH));
 		TRANSFORM.setAllowedIn(Arrays.asList());
+		USE.setAllowedIn(Arrays.asList(KEY));
 		VALUE.setAllowedIn(Arrays.asList(NODE));
 		WHEN.setAllowedIn(Arrays.asList(CHOOSE));
 	}
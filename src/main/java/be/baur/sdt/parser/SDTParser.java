@@ -16,6 +16,7 @@ import be.baur.sdt.transform.ChooseStatement;
 import be.baur.sdt.transform.CopyStatement;
 import be.baur.sdt.transform.ForEachStatement;
 import be.baur.sdt.transform.IfStatement;
+import be.baur.sdt.transform.KeyStatement;
 import be.baur.sdt.transform.NodeStatement;
 import be.baur.sdt.transform.OtherwiseStatement;
 import be.baur.sdt.transform.ParamStatement;
@@ -54,6 +55,8 @@ public final class SDTParser implements Parser<Transform> {
 
 	private static final String ATTRIBUTE_EXPECTS_NO_COMPOUND = "attribute '%s' expects no compound statement";
 	private static final String ATTRIBUTE_NOT_ALLOWED = "attribute '%s' is not allowed here";
+	private static final String KEY_NAME_INVALID = "key name '%s' is invalid";
+	private static final String KEY_REDECLARED = "key '%s' cannot be redeclared";
 	private static final String KEYWORD_UNKNOWN = "keyword '%s' is unknown";
 	private static final String NODE_NAME_INVALID = "node name '%s' is invalid";
 	private static final String PARAMETER_REASSIGNED = "parameter '%s' cannot be reassigned";
@@ -70,6 +73,7 @@ public final class SDTParser implements Parser<Transform> {
 	private static final String STATEMENT_REQUIRES_NO_EXPRESSION = "statement '%s' requires no expression";
 	private static final String STATEMENT_REQUIRES_VARIABLE = "statement '%s' requires a variable name";
 	private static final String STATEMENT_REQUIRES_EXPRESSION = "statement '%s' requires an expression";
+	private static final String STATEMENT_REQUIRES_KEY = "statement '%s' requires a key name";
 	private static final String ATTRIBUTE_REQUIRES_EXPRESSION = "attribute '%s' requires an expression";
 	private static final String VARIABLE_NAME_INVALID = "variable name '%s' is invalid";
 	private static final String VARIABLE_OVERWRITES_PARAM = "variable '%s' cannot overwrite parameter";
@@ -141,6 +145,7 @@ public final class SDTParser implements Parser<Transform> {
 			case COPY: stat = parseCopy(sdt); break;
 			case FOREACH: stat = parseForEach(sdt); break;
 			case IF: stat = parseIf(sdt); break;
+			case KEY: stat = parseKey(sdt); break;
 			case NODE: stat = parseNode(sdt); break;
 			case OTHERWISE: stat = parseOtherwise(sdt); break;
 			case PARAM: stat = parseVariableOrParam(sdt); break;
@@ -251,6 +256,34 @@ public final class SDTParser implements Parser<Transform> {
 	}
 
 
+	/**
+	 * This method parses an SDA node representing a KEY statement. Expected is a
+	 * parent node with a non-empty key name as the value, and a single, mandatory
+	 * MATCH and USE keyword, each with an XPath expression. Keys must be declared
+	 * globally (in the transform node) and not more than once.
+	 */
+	private static KeyStatement parseKey(final DataNode sdt) throws SDTParseException {
+
+		validateStatement(sdt, Arrays.asList(Keyword.MATCH, Keyword.USE), Arrays.asList());
+
+		final String keyname = sdt.getValue();
+		if (keyname.isEmpty())
+			throw exception(sdt, STATEMENT_REQUIRES_KEY, sdt.getName());
+
+		if (! SDT.isVariableName(keyname))
+			throw exception(sdt, KEY_NAME_INVALID, keyname);
+
+		List<Node> keys = sdt.getParent().getAll(n -> n.getName().equals(Keyword.KEY.tag) 
+				&& ((DataNode) n).getValue().equals(keyname));
+		if (keys.size() > 1) // got more than one key with this name
+			throw exception(keys.get(1), KEY_REDECLARED, keyname);
+
+		DataNode match = getAttribute(sdt, Keyword.MATCH, true);
+		DataNode use = getAttribute(sdt, Keyword.USE, true);
+		return new KeyStatement(keyname, xpathFromNode(match), xpathFromNode(use));
+	}
+
+
 	/**
 	 * This method parses an SDA node representing a NODE statement. Expected is a
 	 * parent node with a compound statement and a non-empty node name as the value.
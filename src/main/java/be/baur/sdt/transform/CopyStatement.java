@@ -9,6 +9,7 @@ import be.baur.sdt.StatementContext;
 import be.baur.sdt.TransformContext;
 import be.baur.sdt.TransformException;
 import be.baur.sdt.parser.Keyword;
+import be.baur.sdt.xpath.TinyNode;
 
 /**
  * The <code>CopyStatement</code> evaluates an XPath expression and creates a
@@ -43,6 +44,8 @@ public class CopyStatement extends XPathStatement {
 			for (Object object : (List) value) {
 				if (object instanceof DataNode)
 					staco.getOutputNode().add(((DataNode) object).copy());
+				else if (object instanceof TinyNode)
+					staco.getOutputNode().add(((TinyNode) object).toDataNode());
 			}
 
 		} catch (Exception e) {
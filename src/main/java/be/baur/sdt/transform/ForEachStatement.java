@@ -30,6 +30,7 @@ import be.baur.sdt.parser.Keyword;
 public class ForEachStatement extends XPathStatement {
 
 	private String groupExpression; // expression for the grouping key
+	RecordStream stream = null; // the records, if this foreach is streamed, see TransformInput#streamed
 	
 	
 	/**
@@ -76,6 +77,10 @@ public class ForEachStatement extends XPathStatement {
 		List<Node> statements = nodes();
 		if (statements.isEmpty()) return; // nothing to do
 
+		if (stream != null) { // records are read from the input
+			execute(traco, staco, stream); return;
+		}
+
 		try {
 
 			// select the node-set to be iterated
@@ -167,6 +172,37 @@ public class ForEachStatement extends XPathStatement {
 	}
 	
 	
+	private void execute(TransformContext traco, StatementContext staco, RecordStream stream) throws TransformException {
+		/*
+		 * Streamed execution: read the records one at a time, and add each one to the
+		 * input root node, so it can be navigated as usual. Then execute the compound
+		 * statement, and discard the record. The automatic variable $last is not set,
+		 * since the number of records is not known in advance.
+		 */
+		try {
+
+			stream.consume();
+			StatementContext coco = staco.newChild(); // compound statement context
+			DataNode root = stream.getRoot();
+			DataNode record; int position = 0;
+
+			while ((record = stream.next()) != null) {
+				root.add(record);
+				++position;	coco.setContextNode(record);
+				coco.setVariableValue(FUNCTIONS_NS_URI, "current", record);
+				coco.setVariableValue(FUNCTIONS_NS_URI, "position", new Double(position));
+
+				for (Node statement : nodes())
+					((Statement) statement).execute(traco, coco);
+				root.remove(record);
+			}
+
+		} catch (Exception e) {
+			throw new TransformException(this, e);
+		}
+	}
+
+
 	/**
 	 * @return a data node representing:<br><br>
 	 *         <code>foreach "<i>expression</i>" { <i>statement+</i> }</code>
@@ -0,0 +1,262 @@
+package be.baur.sdt.transform;
+
+import static be.baur.sdt.xpath.SDTFunctionContext.FUNCTIONS_NS_URI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.jaxen.FunctionCallException;
+import org.jaxen.Navigator;
+import org.jaxen.XPath;
+import org.jaxen.function.StringFunction;
+import org.jaxen.saxpath.SAXPathException;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.Node;
+import be.baur.sdt.SDT;
+import be.baur.sdt.StatementContext;
+import be.baur.sdt.TransformContext;
+import be.baur.sdt.TransformException;
+import be.baur.sdt.parser.Keyword;
+import be.baur.sdt.xpath.DocumentNavigator;
+import be.baur.sdt.xpath.FrozenNode;
+import be.baur.sdt.xpath.function.KeyFunction;
+
+/**
+ * The {@code KeyStatement} declares a named key, that is used by the
+ * <code>sdt:key()</code> function to look up nodes by value, like a key in
+ * XSLT. The match expression selects the nodes to be indexed, in the context of
+ * the document node, and the use expression is evaluated for each of these to
+ * obtain its key value(s). Neither expression may refer to variables.
+ * <p>
+ * The index for a document is built on the first lookup, and kept for the
+ * remainder of the execution. For frozen documents, such as those loaded by
+ * <code>document()</code>, the index is kept with the document and shared by
+ * all executions, and by all statements that declare the same key, that is, a
+ * key with the same name, match and use expression. So a document holds one
+ * index per distinct key, regardless of how often a transform is parsed. Keys
+ * can be declared in the context of a transform only.
+ *
+ * @see KeyFunction
+ */
+public class KeyStatement extends XPathStatement {
+
+	private String keyName; // name of the key declared by this statement
+	private final String useExpression; // expression that yields the key values
+
+
+	/**
+	 * Creates a {@code KeyStatement}.
+	 *
+	 * @param name  the name of the key, not null
+	 * @param match the XPath that selects the nodes to index, not null
+	 * @param use   the XPath that yields the key values of a node, not null
+	 * @throws IllegalArgumentException if name is invalid
+	 */
+	public KeyStatement(String name, XPath match, XPath use) {
+		super(match); setKeyName(name);
+		useExpression = Objects.requireNonNull(use, "use must not be null").toString();
+	}
+
+
+	/**
+	 * Returns the name of the key declared by this statement.
+	 *
+	 * @return a key name, not null or empty
+	 */
+	public String getKeyName() {
+		return keyName;
+	}
+
+
+	/**
+	 * Sets the name of the key declared by this statement.
+	 *
+	 * @param name the name of the key, not null or empty
+	 * @throws IllegalArgumentException if name is invalid
+	 */
+	public void setKeyName(String name) {
+		Objects.requireNonNull(name, "name must not be null");
+		if (! SDT.isVariableName(name))
+			throw new IllegalArgumentException("name '" + name + "' is invalid");
+		keyName = name;
+	}
+
+
+	/**
+	 * Returns the XPath expression text that selects the nodes to index.
+	 *
+	 * @return an expression string, never null or empty
+	 */
+	public String getMatchExpression() {
+		return getExpression();
+	}
+
+
+	/**
+	 * Returns the XPath expression text that yields the key values of a node.
+	 *
+	 * @return an expression string, never null or empty
+	 */
+	public String getUseExpression() {
+		return useExpression;
+	}
+
+
+	@Override
+	void execute(TransformContext traco, StatementContext staco) throws TransformException {
+		/*
+		 * Execution: make the key available to the key() function as a hidden
+		 * variable. No index is built until the key is used.
+		 */
+		staco.setVariableValue(FUNCTIONS_NS_URI, KeyFunction.VARIABLE_PREFIX + keyName, new Key(traco));
+	}
+
+
+	/*
+	 * The key of a single execution, with the indexes of the documents that are
+	 * not frozen.
+	 */
+	private final class Key implements KeyFunction.Key {
+
+		private final TransformContext traco;
+		private final Identity identity = new Identity(keyName, getExpression(), useExpression);
+		private final Map<Object, Index> indexes = new IdentityHashMap<Object, Index>();
+
+		Key(TransformContext traco) {
+			this.traco = traco;
+		}
+
+		@Override
+		public List<?> select(Object document, List<String> values) throws FunctionCallException {
+
+			try {
+				FrozenNode root = frozenRoot(document);
+				if (root == null) {
+					Index index = indexes.get(document);
+					if (index == null)
+						indexes.put(document, index = new Index(traco, getExpression(), useExpression, document));
+					return index.select(values);
+				}
+
+				Index index = (Index) root.getAttachment(identity);
+				if (index == null)
+					index = (Index) root.attach(identity, new Index(traco, getExpression(), useExpression, document));
+				return index.select(values);
+
+			} catch (SAXPathException e) {
+				throw new FunctionCallException(e);
+			}
+		}
+	}
+
+
+	/*
+	 * Returns the root of a frozen document, or null if the document is not frozen.
+	 */
+	private static FrozenNode frozenRoot(Object document) {
+
+		if (! (document instanceof Node && DocumentNavigator.getInstance().isDocument(document))) return null;
+		Node root = ((Node) document).nodes().get(0);
+		return (root instanceof FrozenNode) ? (FrozenNode) root : null;
+	}
+
+
+	/*
+	 * The identity of a key, under which its index is attached to a frozen
+	 * document. Equal keys share an index, so that repeated parsing of the same
+	 * transform does not add indexes to a cached document.
+	 */
+	private static final class Identity {
+
+		private final String name, match, use;
+
+		Identity(String name, String match, String use) {
+			this.name = name; this.match = match; this.use = use;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (! (obj instanceof Identity)) return false;
+			Identity other = (Identity) obj;
+			return name.equals(other.name) && match.equals(other.match) && use.equals(other.use);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(name, match, use);
+		}
+	}
+
+
+	/*
+	 * The index of a document; a map of key values to nodes. It holds no reference
+	 * to the statement or the execution that built it.
+	 */
+	private static final class Index {
+
+		private final Map<String, List<Object>> nodes = new HashMap<String, List<Object>>();
+		private final Map<Object, Integer> order = new IdentityHashMap<Object, Integer>(); // of the indexed nodes
+
+		Index(TransformContext traco, String matchExpression, String useExpression, Object document) throws SAXPathException {
+
+			final StatementContext none = new StatementContext(); // no variables
+			final Navigator nav = DocumentNavigator.getInstance();
+
+			XPath match = traco.getXPath(matchExpression);
+			match.setVariableContext(none);
+			XPath use = traco.getXPath(useExpression);
+			use.setVariableContext(none);
+
+			for (Object node : match.selectNodes(document)) {
+				order.put(node, order.size());
+				Object value = use.evaluate(node);
+				if (value instanceof List) {
+					for (Object item : (List<?>) value)
+						add(StringFunction.evaluate(item, nav), node);
+				}
+				else add(StringFunction.evaluate(value, nav), node);
+			}
+		}
+
+		private void add(String value, Object node) {
+			List<Object> list = nodes.computeIfAbsent(value, k -> new ArrayList<Object>(1));
+			if (list.isEmpty() || list.get(list.size() - 1) != node) list.add(node);
+		}
+
+		List<?> select(List<String> values) {
+
+			if (values.size() == 1) {
+				List<Object> list = nodes.get(values.get(0));
+				return list == null ? Collections.emptyList() : new ArrayList<Object>(list);
+			}
+
+			Map<Object, Object> unique = new IdentityHashMap<Object, Object>();
+			List<Object> result = new ArrayList<Object>();
+			for (String value : values)
+				for (Object node : nodes.getOrDefault(value, Collections.emptyList()))
+					if (unique.put(node, node) == null) result.add(node);
+			result.sort((n1, n2) -> order.get(n1) - order.get(n2)); // in document order
+			return result;
+		}
+	}
+
+
+	/**
+	 * @return a data node representing:<br><br>
+	 *         <code>key "<i>name</i>" { match "<i>expression</i>" use "<i>expression</i>" }</code>
+	 */
+	@Override
+	public DataNode toSDA() {
+		DataNode node = new DataNode(Keyword.KEY.tag, keyName);
+		node.add( new DataNode(Keyword.MATCH.tag, getExpression()) );
+		node.add( new DataNode(Keyword.USE.tag, useExpression) );
+		return node;
+	}
+
+}
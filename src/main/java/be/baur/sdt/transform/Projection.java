@@ -0,0 +1,396 @@
+package be.baur.sdt.transform;
+
+import static be.baur.sdt.xpath.SDTFunctionContext.FUNCTIONS_NS_PFX;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jaxen.expr.BinaryExpr;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FilterExpr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.NameStep;
+import org.jaxen.expr.PathExpr;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.Step;
+import org.jaxen.expr.UnaryExpr;
+import org.jaxen.expr.UnionExpr;
+import org.jaxen.expr.VariableReferenceExpr;
+import org.jaxen.saxpath.Axis;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.Node;
+import be.baur.sda.SDA;
+import be.baur.sda.io.ParseException;
+import be.baur.sdt.TransformException;
+import be.baur.sdt.xpath.SDAScanner;
+import be.baur.sdt.xpath.function.DocumentNodeFunction;
+import be.baur.sdt.xpath.function.KeyFunction;
+import be.baur.sdt.xpath.function.RenderSDAFunction;
+
+/**
+ * A {@code Projection} describes the part of an input document that a transform
+ * can refer to. It is determined by a static analysis of the location paths in
+ * all expressions of the transform, taking into account the context set by
+ * {@code foreach} statements and the nodes assigned to variables. The
+ * projection is a tree of paths; nodes selected by a {@code copy} statement,
+ * the descendant axis or a function that needs entire subtrees are kept with
+ * all their descendants.
+ * <p>
+ * A projecting parse reads an input document and drops all nodes that are not
+ * in the projection, without parsing them. Nodes that are kept retain their
+ * value, and a node with a compound statement keeps one (possibly empty), so
+ * that the transform produces the same output as on the complete document.
+ * <p>
+ * The analysis is conservative: if it cannot determine what is used, such as
+ * for the <code>evaluate()</code> function or following and preceding axes,
+ * the complete document is kept.
+ */
+final class Projection {
+
+	private static final int MAX_PASSES = 8; // for variables that refer to each other
+
+	/*
+	 * A path in the projection tree. Children are keyed by name, or "*" for any
+	 * name. A path that keeps all descendants also stands for each of them.
+	 */
+	private static final class Path {
+		final Path parent;
+		final Map<String, Path> children = new HashMap<String, Path>();
+		boolean all = false; // whether all descendants are kept
+
+		Path(Path parent) {
+			this.parent = parent;
+		}
+	}
+
+	private final Path document = new Path(null); // the document node
+	private final Map<String, Set<Path>> variables = new HashMap<String, Set<Path>>();
+	private final Set<Path> keys = new HashSet<Path>(); // nodes indexed by keys
+	private int modifications = 0; // number of changes to the tree and variables
+
+
+	/**
+	 * Determines the projection of the specified transform.
+	 *
+	 * @param transform the transform to analyze, not null
+	 * @throws TransformException if an expression could not be compiled
+	 */
+	Projection(Transform transform) throws TransformException {
+
+		/*
+		 * Variables may be used before they are assigned, for example in a loop, so
+		 * the analysis is repeated until the projection no longer changes. Should that
+		 * take too long, all input is kept.
+		 */
+		int passes = 0, before;
+		do {
+			before = modifications;
+			statements(transform.nodes(), Collections.singleton(document));
+		} while (modifications != before && ++passes < MAX_PASSES);
+
+		if (modifications != before) keepAll(document);
+	}
+
+
+	/*
+	 * Analyzes a list of statements evaluated in the specified context.
+	 */
+	private void statements(List<Node> statements, Set<Path> context) throws TransformException {
+		for (Node statement : statements)
+			statement((Statement) statement, context);
+	}
+
+
+	/*
+	 * Analyzes a single statement and its compound statement.
+	 */
+	private void statement(Statement statement, Set<Path> context) throws TransformException {
+
+		if (statement instanceof SortStatement)
+			return; // analyzed with the foreach statement
+
+		if (statement instanceof ForEachStatement) {
+
+			ForEachStatement fe = (ForEachStatement) statement;
+			Set<Path> selected = select(fe, fe.getExpression(), context);
+			if (fe.getGroupExpression() != null)
+				select(fe, fe.getGroupExpression(), selected);
+
+			for (Node node : fe.nodes()) {
+				if (! (node instanceof SortStatement)) continue;
+				SortStatement sort = (SortStatement) node;
+				select(sort, sort.getExpression(), selected); // the sort key
+				if (sort.getReverseExpression() != null) // evaluated in the outer context
+					select(sort, sort.getReverseExpression(), context);
+				if (sort.getComparatorExpression() != null)
+					select(sort, sort.getComparatorExpression().replace("?", "''"), context);
+			}
+
+			statements(fe.nodes(), selected);
+			return;
+		}
+
+		if (statement instanceof VariableStatement) {
+			VariableStatement var = (VariableStatement) statement;
+			Set<Path> selected = select(var, var.getExpression(), context);
+			Set<Path> assigned = variables.computeIfAbsent(var.getVarName(), k -> new HashSet<Path>());
+			if (assigned.addAll(selected)) ++modifications;
+		}
+		else if (statement instanceof CopyStatement) {
+			for (Path path : select(statement, ((CopyStatement) statement).getExpression(), context))
+				keepAll(path);
+		}
+		else if (statement instanceof KeyStatement) {
+			KeyStatement key = (KeyStatement) statement;
+			Set<Path> matched = select(key, key.getMatchExpression(), Collections.singleton(document));
+			select(key, key.getUseExpression(), matched);
+			if (keys.addAll(matched)) ++modifications;
+		}
+		else if (statement instanceof XPathStatement)
+			select(statement, ((XPathStatement) statement).getExpression(), context);
+		else if (statement instanceof NodeStatement) {
+			String value = ((NodeStatement) statement).getValueExpression();
+			if (value != null) select(statement, value, context);
+		}
+
+		statements(statement.nodes(), context);
+	}
+
+
+	/*
+	 * Analyzes an expression text evaluated in the specified context, and returns
+	 * the paths of the input nodes it selects.
+	 */
+	private Set<Path> select(Statement statement, String expression, Set<Path> context) throws TransformException {
+		return select(StreamAnalyzer.parse(statement, expression), context);
+	}
+
+
+	/*
+	 * Analyzes an expression evaluated in the specified context, and returns the
+	 * paths of the input nodes it selects.
+	 */
+	private Set<Path> select(Expr expr, Set<Path> context) {
+
+		if (expr instanceof LocationPath) {
+			LocationPath path = (LocationPath) expr;
+			return steps(path.getSteps(), path.isAbsolute() ? Collections.singleton(document) : context);
+		}
+
+		if (expr instanceof PathExpr) {
+			PathExpr path = (PathExpr) expr;
+			Set<Path> selected = context;
+			if (path.getFilterExpr() != null)
+				selected = select(path.getFilterExpr(), context);
+			if (path.getLocationPath() != null)
+				selected = (path.getFilterExpr() == null) ? select(path.getLocationPath(), context)
+					: steps(path.getLocationPath().getSteps(), selected);
+			return selected;
+		}
+
+		if (expr instanceof FilterExpr) {
+			FilterExpr filter = (FilterExpr) expr;
+			Set<Path> selected = select(filter.getExpr(), context);
+			predicates(filter.getPredicates(), selected);
+			return selected;
+		}
+
+		if (expr instanceof BinaryExpr) {
+			Set<Path> lhs = select(((BinaryExpr) expr).getLHS(), context);
+			Set<Path> rhs = select(((BinaryExpr) expr).getRHS(), context);
+			if (! (expr instanceof UnionExpr)) return Collections.emptySet();
+			Set<Path> union = new HashSet<Path>(lhs); union.addAll(rhs);
+			return union;
+		}
+
+		if (expr instanceof UnaryExpr) {
+			select(((UnaryExpr) expr).getExpr(), context);
+			return Collections.emptySet();
+		}
+
+		if (expr instanceof FunctionCallExpr) {
+			FunctionCallExpr function = (FunctionCallExpr) expr;
+			String name = function.getFunctionName();
+			if (name.equals("evaluate")) // may select anything
+				keepAll(document);
+			boolean subtrees = name.equals(RenderSDAFunction.NAME) || name.equals(DocumentNodeFunction.NAME);
+			for (Object param : function.getParameters())
+				for (Path path : select((Expr) param, context))
+					if (subtrees) keepAll(path);
+			if (name.equals(KeyFunction.NAME) && FUNCTIONS_NS_PFX.equals(function.getPrefix()))
+				return keys; // any node indexed by a key
+			return Collections.emptySet(); // no other function returns input nodes
+		}
+
+		if (expr instanceof VariableReferenceExpr) {
+			VariableReferenceExpr var = (VariableReferenceExpr) expr;
+			String prefix = var.getPrefix();
+			if (prefix == null || prefix.isEmpty())
+				return variables.getOrDefault(var.getVariableName(), Collections.emptySet());
+			if (FUNCTIONS_NS_PFX.equals(prefix) && var.getVariableName().startsWith("current"))
+				return context; // $sdt:current and $sdt:current-group
+		}
+
+		return Collections.emptySet(); // literals, numbers and other variables
+	}
+
+
+	/*
+	 * Analyzes the steps of a location path evaluated in the specified context,
+	 * and returns the paths of the selected nodes.
+	 */
+	private Set<Path> steps(List<?> steps, Set<Path> context) {
+
+		Set<Path> selected = context;
+		for (Object object : steps) {
+			Step step = (Step) object;
+			String name = "*"; // any other node test is treated as a wildcard
+			if (step instanceof NameStep)
+				name = ((NameStep) step).getLocalName();
+
+			Set<Path> result = new HashSet<Path>();
+			for (Path path : selected) {
+				switch (step.getAxis()) {
+					case Axis.CHILD:
+						result.add(child(path, name)); break;
+					case Axis.DESCENDANT: case Axis.DESCENDANT_OR_SELF:
+						keepAll(path); result.add(path); break;
+					case Axis.SELF:
+						result.add(path); break;
+					case Axis.PARENT:
+						if (path.all) result.add(path);
+						if (path.parent != null) result.add(path.parent);
+						break;
+					case Axis.ANCESTOR: case Axis.ANCESTOR_OR_SELF:
+						if (path.all || step.getAxis() == Axis.ANCESTOR_OR_SELF) result.add(path);
+						for (Path p = path.parent; p != null; p = p.parent) result.add(p);
+						break;
+					case Axis.FOLLOWING_SIBLING: case Axis.PRECEDING_SIBLING:
+						if (path.all) result.add(path);
+						if (path.parent != null) result.add(child(path.parent, name));
+						break;
+					case Axis.ATTRIBUTE: case Axis.NAMESPACE:
+						break;
+					default: // following and preceding
+						keepAll(document); result.add(document);
+				}
+			}
+			predicates(step.getPredicates(), result);
+			selected = result;
+		}
+		return selected;
+	}
+
+
+	/*
+	 * Analyzes a list of predicates evaluated in the specified context.
+	 */
+	private void predicates(List<?> predicates, Set<Path> context) {
+		for (Object predicate : predicates)
+			select(((Predicate) predicate).getExpr(), context);
+	}
+
+
+	/*
+	 * Returns the child path with the specified name, which is created if needed.
+	 * A path that keeps all descendants is returned itself.
+	 */
+	private Path child(Path path, String name) {
+
+		if (path.all) return path;
+		Path child = path.children.get(name);
+		if (child == null) {
+			path.children.put(name, child = new Path(path)); ++modifications;
+		}
+		return child;
+	}
+
+
+	/*
+	 * Marks a path to keep all descendants.
+	 */
+	private void keepAll(Path path) {
+		if (path.all) return;
+		path.all = true; ++modifications;
+	}
+
+
+	/*
+	 * Returns the child paths of a set of paths that match the specified name.
+	 */
+	private static Set<Path> match(Set<Path> paths, String name) {
+
+		Set<Path> matched = new HashSet<Path>();
+		for (Path path : paths) {
+			if (path.all) {
+				matched.add(path); continue;
+			}
+			Path child = path.children.get(name);
+			if (child != null) matched.add(child);
+			if ((child = path.children.get("*")) != null) matched.add(child);
+		}
+		return matched;
+	}
+
+
+	/**
+	 * Reads an SDA document from a character stream, and returns the root node of
+	 * the projected document.
+	 *
+	 * @param input a character input stream with SDA content, not null
+	 * @return a root node
+	 * @throws IOException    if an I/O operation failed or the input is malformed
+	 * @throws ParseException if a node that is kept could not be parsed
+	 */
+	DataNode parse(Reader input) throws IOException, ParseException {
+
+		if (document.all) return SDA.parse(input);
+
+		SDAScanner scanner = new SDAScanner(input);
+		String name = scanner.nextName();
+		if (name == null)
+			throw new IOException("root node expected at position " + scanner.getPosition());
+
+		DataNode root = node(scanner, name, match(Collections.singleton(document), name));
+		scanner.exitDocument();
+		return root;
+	}
+
+
+	/*
+	 * Reads the node with the specified name, of which only the descendants in the
+	 * specified paths are kept.
+	 */
+	private static DataNode node(SDAScanner scanner, String name, Set<Path> paths) throws IOException, ParseException {
+
+		for (Path path : paths)
+			if (path.all) return SDA.parse(scanner.readNode(name));
+
+		if (! SDA.isName(name))
+			throw new IOException("node name '" + name + "' is invalid at position " + scanner.getPosition());
+		DataNode node = new DataNode(name, scanner.nextValue());
+		if (! scanner.enterCompound())
+			return node;
+
+		node.add(null); // a parent, even if no children are kept
+		String child;
+		while ((child = scanner.nextName()) != null) {
+			Set<Path> matched = match(paths, child);
+			if (matched.isEmpty())
+				scanner.skipNode();
+			else
+				node.add(node(scanner, child, matched));
+		}
+		scanner.exitCompound();
+		return node;
+	}
+
+}
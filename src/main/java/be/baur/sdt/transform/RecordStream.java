@@ -0,0 +1,136 @@
+package be.baur.sdt.transform;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.SDA;
+import be.baur.sda.io.ParseException;
+import be.baur.sdt.xpath.DocumentNavigator;
+import be.baur.sdt.xpath.SDAScanner;
+
+/**
+ * A {@code RecordStream} reads the records for a streamed {@code foreach} from
+ * an input stream, one at a time. Upon creation, the root node is read and
+ * wrapped in a document node, that serves as the XPath context of top-level
+ * statements. Records are parsed into data nodes on demand; those that are not
+ * selected by the foreach are skipped without being parsed.
+ *
+ * @see StreamAnalyzer
+ */
+final class RecordStream {
+
+	private final String recordName; // name of the records selected, null means any
+	private final SDAScanner scanner;
+	private final DataNode root;
+	private final Object document;
+	private boolean exhausted; // whether all records have been read
+	private boolean consumed; // whether the records are being or have been read
+
+
+	/**
+	 * Creates a record stream and reads the root node of the input.
+	 *
+	 * @param analyzer the analyzer of a streamable transform
+	 * @param input    an input stream with SDA content
+	 * @throws IOException if an I/O operation failed or the root is malformed
+	 */
+	RecordStream(StreamAnalyzer analyzer, Reader input) throws IOException {
+
+		this.scanner = new SDAScanner(input);
+
+		String name = scanner.nextName();
+		if (name == null || ! SDA.isName(name))
+			throw new IOException("root node expected at position " + scanner.getPosition());
+		root = new DataNode(name, scanner.nextValue());
+
+		exhausted = ! scanner.enterCompound();
+		if (! exhausted) root.add(null); // a vacant parent, until records are added
+
+		boolean selected = analyzer.rootName.equals("*") || analyzer.rootName.equals(name);
+		recordName = analyzer.recordName.equals("*") ? null : analyzer.recordName;
+		if (! selected) skip(); // the foreach selects nothing
+
+		document = DocumentNavigator.newDocumentNode(root);
+	}
+
+
+	/**
+	 * Returns the input root node. Records are added to the root while being
+	 * processed, and removed afterwards.
+	 *
+	 * @return a data node
+	 */
+	DataNode getRoot() {
+		return root;
+	}
+
+
+	/**
+	 * Returns the document node containing the input root node.
+	 *
+	 * @return a document node
+	 */
+	Object getDocument() {
+		return document;
+	}
+
+
+	/**
+	 * Marks the records as being consumed. The records can be read only once, so
+	 * an attempt to iterate them again is an error rather than an empty iteration.
+	 *
+	 * @throws IllegalStateException if the records were consumed before
+	 */
+	void consume() {
+		if (consumed)
+			throw new IllegalStateException("streamed records cannot be iterated more than once");
+		consumed = true;
+	}
+
+
+	/**
+	 * Reads and returns the next record, or null if there are no more records.
+	 *
+	 * @return a data node, may be null
+	 * @throws IOException    if an I/O operation failed
+	 * @throws ParseException if a record could not be parsed
+	 */
+	DataNode next() throws IOException, ParseException {
+
+		if (exhausted) return null;
+
+		String name;
+		while ((name = scanner.nextName()) != null) {
+			if (recordName == null || recordName.equals(name))
+				return SDA.parse(scanner.readNode(name));
+			scanner.skipNode();
+		}
+		scanner.exitCompound(); exhausted = true;
+		return null;
+	}
+
+
+	/*
+	 * Skips any records that have not been read.
+	 */
+	private void skip() throws IOException {
+
+		if (exhausted) return;
+
+		while (scanner.nextName() != null)
+			scanner.skipNode();
+		scanner.exitCompound(); exhausted = true;
+	}
+
+
+	/**
+	 * Skips any remaining records and verifies the end of the input.
+	 *
+	 * @throws IOException if an I/O operation failed or excess input was found
+	 */
+	void close() throws IOException {
+		skip(); scanner.exitDocument();
+	}
+
+}
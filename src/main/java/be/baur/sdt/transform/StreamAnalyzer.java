@@ -0,0 +1,288 @@
+package be.baur.sdt.transform;
+
+import static be.baur.sdt.xpath.SDTFunctionContext.FUNCTIONS_NS_PFX;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jaxen.JaxenException;
+import org.jaxen.expr.BinaryExpr;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FilterExpr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.NameStep;
+import org.jaxen.expr.PathExpr;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.Step;
+import org.jaxen.expr.UnaryExpr;
+import org.jaxen.expr.UnionExpr;
+import org.jaxen.expr.VariableReferenceExpr;
+import org.jaxen.saxpath.Axis;
+
+import be.baur.sda.Node;
+import be.baur.sdt.TransformException;
+import be.baur.sdt.xpath.SDAXPath;
+
+/**
+ * A {@code StreamAnalyzer} determines whether a transform can be executed while
+ * its input is being read. This is the case if a top-level {@code foreach}
+ * (possibly nested in {@code node} statements) selects the repeating children
+ * of the input root node, as in <code>foreach "/root/record"</code>, and
+ * <p>
+ * - the streamed foreach does not sort or group its records,<br>
+ * - its compound statement does not refer to <code>$sdt:last</code>,<br>
+ * - expressions in its compound statement do not use absolute paths, reverse,
+ * sibling or following axes, or parent steps that leave the current record,<br>
+ * - it does not assign nodes to variables declared outside of it, since those
+ * would outlive the record they belong to,<br>
+ * - no other statement refers to the input document, and no key is declared.
+ * <p>
+ * The analysis is conservative; a transform that is rejected may still be
+ * executed on a complete input tree.
+ */
+final class StreamAnalyzer {
+
+	private static final int TOP = Integer.MIN_VALUE; // the context is the input document
+	private static final int NONE = Integer.MIN_VALUE + 1; // does not select input nodes
+
+	ForEachStatement foreach = null; // the streamed foreach statement
+	String rootName; // name test of the root step, may be "*"
+	String recordName; // name test of the record step, may be "*"
+	private int nesting = -1; // foreach nesting level within the streamed foreach
+	private final Set<String> outer = new HashSet<String>(); // variables declared outside the streamed foreach
+	private boolean variable; // whether the last expression analyzed refers to a variable
+
+
+	/**
+	 * Analyzes the specified transform.
+	 *
+	 * @param transform the transform to analyze, not null
+	 * @throws TransformException if the transform is not streamable
+	 */
+	StreamAnalyzer(Transform transform) throws TransformException {
+
+		statements(transform.nodes(), TOP);
+		if (foreach == null)
+			throw new TransformException(null, "no foreach statement selects the records of the input root node");
+	}
+
+
+	/*
+	 * Analyzes a list of statements evaluated in a context of the specified depth
+	 * relative to the streamed record.
+	 */
+	private void statements(List<Node> statements, int depth) throws TransformException {
+		for (Node statement : statements)
+			statement((Statement) statement, depth);
+	}
+
+
+	/*
+	 * Analyzes a single statement and its compound statement.
+	 */
+	private void statement(Statement statement, int depth) throws TransformException {
+
+		if (statement instanceof ForEachStatement) {
+
+			ForEachStatement fe = (ForEachStatement) statement;
+			Expr expr = parse(fe, fe.getExpression());
+
+			if (depth == TOP && foreach == null && isRecordPath(expr)) {
+
+				if (fe.getGroupExpression() != null)
+					throw notStreamable(fe, "grouping requires all records");
+				for (Node node : fe.nodes())
+					if (node instanceof SortStatement)
+						throw notStreamable((Statement) node, "sorting requires all records");
+
+				List<?> steps = ((LocationPath) expr).getSteps();
+				rootName = ((NameStep) steps.get(0)).getLocalName();
+				recordName = ((NameStep) steps.get(1)).getLocalName();
+				foreach = fe; nesting = 0;
+				statements(fe.nodes(), 0); // the record is the context node
+				nesting = -1;
+				return;
+			}
+
+			int selected = select(fe, expr, depth);
+			int inner = (selected == NONE || selected == TOP) ? (depth == TOP ? TOP : 0) : selected;
+			if (fe.getGroupExpression() != null)
+				select(fe, parse(fe, fe.getGroupExpression()), inner);
+
+			boolean nested = nesting >= 0; // within the streamed foreach
+			if (nested) ++nesting;
+			statements(fe.nodes(), inner);
+			if (nested) --nesting;
+			return;
+		}
+
+		if (statement instanceof KeyStatement)
+			throw notStreamable(statement, "keys require the entire input");
+
+		if (statement instanceof XPathStatement) {
+			variable = false;
+			int selected = select(statement, parse(statement, ((XPathStatement) statement).getExpression()), depth);
+			if (statement instanceof VariableStatement) {
+				String name = ((VariableStatement) statement).getVarName();
+				if (nesting < 0)
+					outer.add(name);
+				else if (outer.contains(name) && (selected != NONE || variable))
+					throw notStreamable(statement, "nodes of a streamed record may not be assigned to variable '"
+						+ name + "' declared outside the streamed foreach");
+			}
+		}
+
+		if (statement instanceof SortStatement) {
+			String reverse = ((SortStatement) statement).getReverseExpression();
+			if (reverse != null) select(statement, parse(statement, reverse), depth);
+		}
+		else if (statement instanceof NodeStatement) {
+			String value = ((NodeStatement) statement).getValueExpression();
+			if (value != null) select(statement, parse(statement, value), depth);
+		}
+
+		statements(statement.nodes(), depth);
+	}
+
+
+	/*
+	 * Returns whether an expression selects the children of the input root node;
+	 * a relative or absolute path of two child steps without predicates.
+	 */
+	private static boolean isRecordPath(Expr expr) {
+
+		if (! (expr instanceof LocationPath)) return false;
+		List<?> steps = ((LocationPath) expr).getSteps();
+		if (steps.size() != 2) return false;
+
+		for (Object object : steps) {
+			if (! (object instanceof NameStep)) return false;
+			NameStep step = (NameStep) object;
+			if (step.getAxis() != Axis.CHILD || ! step.getPredicates().isEmpty())
+				return false;
+			if (step.getPrefix() != null && ! step.getPrefix().isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+
+	/*
+	 * Analyzes an expression evaluated in a context of the specified depth, and
+	 * returns the (minimum) depth of the input nodes it selects, or NONE.
+	 */
+	private int select(Statement statement, Expr expr, int depth) throws TransformException {
+
+		if (expr instanceof LocationPath) {
+			if (depth == TOP)
+				throw notStreamable(statement, "expression refers to the input outside of the streamed foreach");
+			if (((LocationPath) expr).isAbsolute())
+				throw notStreamable(statement, "absolute paths are not streamable");
+			return steps(statement, ((LocationPath) expr).getSteps(), depth);
+		}
+
+		if (expr instanceof PathExpr) {
+			PathExpr path = (PathExpr) expr;
+			if (path.getFilterExpr() == null)
+				return select(statement, path.getLocationPath(), depth);
+			int base = select(statement, path.getFilterExpr(), depth);
+			if (path.getLocationPath() == null)
+				return base;
+			return steps(statement, path.getLocationPath().getSteps(), base < 0 ? 0 : base);
+		}
+
+		if (expr instanceof FilterExpr) {
+			FilterExpr filter = (FilterExpr) expr;
+			int base = select(statement, filter.getExpr(), depth);
+			predicates(statement, filter.getPredicates(), base < 0 ? 0 : base);
+			return base;
+		}
+
+		if (expr instanceof BinaryExpr) {
+			int lhs = select(statement, ((BinaryExpr) expr).getLHS(), depth);
+			int rhs = select(statement, ((BinaryExpr) expr).getRHS(), depth);
+			if (! (expr instanceof UnionExpr)) return NONE;
+			return (lhs == NONE) ? rhs : (rhs == NONE) ? lhs : Math.min(lhs, rhs);
+		}
+
+		if (expr instanceof UnaryExpr) {
+			select(statement, ((UnaryExpr) expr).getExpr(), depth);
+			return NONE;
+		}
+
+		if (expr instanceof FunctionCallExpr) {
+			for (Object param : ((FunctionCallExpr) expr).getParameters())
+				select(statement, (Expr) param, depth);
+			return NONE;
+		}
+
+		if (expr instanceof VariableReferenceExpr) {
+			VariableReferenceExpr var = (VariableReferenceExpr) expr;
+			variable = true; // its value may be a node of the record
+			if (nesting == 0 && "last".equals(var.getVariableName())
+					&& FUNCTIONS_NS_PFX.equals(var.getPrefix()))
+				throw notStreamable(statement, "the number of records is unknown in a streamed foreach");
+		}
+
+		return NONE; // literals, numbers and variables
+	}
+
+
+	/*
+	 * Analyzes the steps of a relative location path and returns the depth of the
+	 * selected nodes.
+	 */
+	private int steps(Statement statement, List<?> steps, int depth) throws TransformException {
+
+		for (Object object : steps) {
+			Step step = (Step) object;
+			switch (step.getAxis()) {
+				case Axis.CHILD: case Axis.DESCENDANT:
+					++depth; break;
+				case Axis.SELF: case Axis.DESCENDANT_OR_SELF:
+				case Axis.ATTRIBUTE: case Axis.NAMESPACE:
+					break;
+				case Axis.PARENT:
+					if (--depth < 0)
+						throw notStreamable(statement, "parent steps may not leave the streamed record");
+					break;
+				default:
+					throw notStreamable(statement, "axis '" + Axis.lookup(step.getAxis()) + "' is not streamable");
+			}
+			predicates(statement, step.getPredicates(), depth);
+		}
+		return depth;
+	}
+
+
+	/*
+	 * Analyzes a list of predicates evaluated in a context of the specified depth.
+	 */
+	private void predicates(Statement statement, List<?> predicates, int depth) throws TransformException {
+		for (Object predicate : predicates)
+			select(statement, ((Predicate) predicate).getExpr(), depth);
+	}
+
+
+	/*
+	 * Returns the compiled root expression of an XPath expression text.
+	 */
+	static Expr parse(Statement statement, String expression) throws TransformException {
+		try {
+			return new SDAXPath(expression).getRootExpr();
+		} catch (JaxenException e) {
+			throw new TransformException(statement, e);
+		}
+	}
+
+
+	/*
+	 * Returns a transform exception for a statement that is not streamable.
+	 */
+	private static TransformException notStreamable(Statement statement, String reason) {
+		return new TransformException(statement, "statement is not streamable: " + reason);
+	}
+
+}
@@ -1,6 +1,7 @@
 package be.baur.sdt.transform;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import java.util.List;
 import java.util.Objects;
@@ -17,6 +18,8 @@ import be.baur.sdt.TransformException;
 import be.baur.sdt.parser.Keyword;
 import be.baur.sdt.parser.SDTParseException;
 import be.baur.sdt.parser.SDTParser;
+import be.baur.sdt.xpath.DocumentNavigator;
+import be.baur.sdt.xpath.TinyTree;
 
 /**
  * A {@code Transform} represents a recipe with statements for mapping and
@@ -41,8 +44,123 @@ public final class Transform extends AbstractNode {
 	public DataNode execute(TransformContext context) throws TransformException {
 
 		Objects.requireNonNull(context, "context must not be null");
+		return execute(context, new StatementContext());
+	}
+
+
+	/**
+	 * Executes this transform with the supplied {@code TransformContext} and
+	 * input. The input also determines how it is read, for example parsed in full,
+	 * lazily, or one record at a time, see {@link TransformInput}.
+	 * 
+	 * @param context the transformation context, not null
+	 * @param input   the input, not null
+	 * @return an output node, may be null
+	 * @throws TransformException if the input could not be read or parsed, or if
+	 *                            an exception occurs during execution
+	 * @throws IllegalArgumentException if an input node is not a root node and
+	 *                                  not part of a document
+	 */
+	public DataNode execute(TransformContext context, TransformInput input) throws TransformException {
+
+		Objects.requireNonNull(context, "context must not be null");
+		Objects.requireNonNull(input, "input must not be null");
+		return input.execute(this, context);
+	}
+
+
+	/*
+	 * Executes this transform on an input node. If the input is a root node, a
+	 * document node is created for it.
+	 */
+	DataNode execute(TransformContext context, DataNode input) throws TransformException {
+
+		Object document = DocumentNavigator.getInstance().getDocumentNode(input);
+		if (document == null) {
+			if (input.getParent() != null)
+				throw new IllegalArgumentException("input must be a root node");
+			document = DocumentNavigator.newDocumentNode(input);
+		}
 
 		StatementContext staco = new StatementContext();
+		staco.setContextNode(document);
+		return execute(context, staco);
+	}
+
+
+	/*
+	 * Executes this transform on a tiny tree.
+	 */
+	DataNode execute(TransformContext context, TinyTree input) throws TransformException {
+
+		StatementContext staco = new StatementContext();
+		staco.setContextNode(input.getDocument());
+		return execute(context, staco);
+	}
+
+
+	/*
+	 * Executes this transform while reading the input from a character stream,
+	 * one record of the streamed foreach at a time.
+	 */
+	DataNode stream(TransformContext context, Reader input) throws TransformException {
+
+		/*
+		 * The streamed foreach is told where to read its records from before execution.
+		 * Since a transform may be executed by several threads at the same time, this
+		 * is done on a private copy of this transform, rather than on this one.
+		 */
+		Transform copy;
+		try {
+			copy = SDT.parse(new StringReader(this.toString()));
+		} catch (IOException | SDTParseException e) {
+			throw new TransformException(null, e);
+		}
+
+		StreamAnalyzer analyzer = new StreamAnalyzer(copy);
+		try {
+			RecordStream stream = new RecordStream(analyzer, input);
+			analyzer.foreach.stream = stream;
+			StatementContext staco = new StatementContext();
+			staco.setContextNode(stream.getDocument());
+
+			DataNode output = copy.execute(context, staco);
+			stream.close(); // verify the remaining input
+			return output;
+
+		} catch (IOException e) {
+			throw new TransformException(null, e);
+		}
+	}
+
+
+	/**
+	 * Returns whether this transform can be executed while reading its input. This
+	 * is the case if a top-level {@code foreach} selects the children of the input
+	 * root node, like <code>foreach "/root/record"</code>, without sorting or
+	 * grouping them, and no expression refers to input nodes outside of the
+	 * record being processed. Expressions in the streamed foreach may therefore not
+	 * use absolute paths, reverse, sibling or following axes, or
+	 * <code>$sdt:last</code>. Transforms that declare keys are not streamable.
+	 * 
+	 * @return true if this transform is streamable
+	 * @see TransformInput#streamed(Reader)
+	 */
+	public boolean isStreamable() {
+		try {
+			new StreamAnalyzer(this); return true;
+		} catch (TransformException e) {
+			return false;
+		}
+	}
+
+
+	/*
+	 * Executes the statements of this transform in the specified statement context
+	 * and returns the output node.
+	 */
+	private DataNode execute(TransformContext context, StatementContext staco) throws TransformException {
+
 	    DataNode output = new DataNode("output"); // collects nodes created during transform
 	    staco.setOutputNode(output);
 	    
@@ -0,0 +1,224 @@
+package be.baur.sdt.transform;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.SDA;
+import be.baur.sda.io.ParseException;
+import be.baur.sdt.TransformContext;
+import be.baur.sdt.TransformException;
+import be.baur.sdt.xpath.DocumentNavigator;
+import be.baur.sdt.xpath.LazyNode;
+import be.baur.sdt.xpath.MappedFileReader;
+import be.baur.sdt.xpath.ParallelParser;
+import be.baur.sdt.xpath.TinyTree;
+
+/**
+ * A {@code TransformInput} is the input of a {@code Transform}, together with
+ * the way it is read. Inputs are created by the static methods of this class,
+ * one for each way of reading, and passed to
+ * {@link Transform#execute(TransformContext, TransformInput)}. The document
+ * node of the input serves as the XPath context of top-level statements, so
+ * that expressions like <code>/root/record</code> select input nodes.
+ * <p>
+ * An input that is read from a stream or a file is read when the transform is
+ * executed, and an input from a stream can be used only once.
+ *
+ * @see Transform
+ */
+public final class TransformInput {
+
+	/*
+	 * Reads the input, if needed, and executes a transform on it.
+	 */
+	private interface Execution {
+		DataNode execute(Transform transform, TransformContext context) throws TransformException;
+	}
+
+	private final Execution execution;
+
+
+	private TransformInput(Execution execution) {
+		this.execution = execution;
+	}
+
+
+	/**
+	 * Executes a transform on this input.
+	 */
+	DataNode execute(Transform transform, TransformContext context) throws TransformException {
+		return execution.execute(transform, context);
+	}
+
+
+	/**
+	 * Returns an input node. If it is a root node, a document node is created for
+	 * it, see {@link DocumentNavigator#newDocumentNode}; otherwise, it must be
+	 * part of a document.
+	 *
+	 * @param input the input node, not null
+	 * @return an input
+	 */
+	public static TransformInput of(DataNode input) {
+		Objects.requireNonNull(input, "input must not be null");
+		return new TransformInput((transform, context) -> transform.execute(context, input));
+	}
+
+
+	/**
+	 * Returns a tiny tree as input. The tree is navigated directly, without data
+	 * nodes, see {@link TinyTree}. A tiny tree takes much less memory than the
+	 * same input as data nodes, and since it is immutable, it can be shared by
+	 * transforms that execute concurrently.
+	 *
+	 * @param input a tiny tree, not null
+	 * @return an input
+	 */
+	public static TransformInput of(TinyTree input) {
+		Objects.requireNonNull(input, "input must not be null");
+		return new TransformInput((transform, context) -> transform.execute(context, input));
+	}
+
+
+	/**
+	 * Returns the input read from a character stream, which is parsed into a node
+	 * tree before execution.
+	 *
+	 * @param input a character input stream with SDA content, not null
+	 * @return an input
+	 */
+	public static TransformInput of(Reader input) {
+		Objects.requireNonNull(input, "input must not be null");
+		return new TransformInput((transform, context) -> {
+			DataNode root;
+			try {
+				root = SDA.parse(input);
+			} catch (IOException | ParseException e) {
+				throw new TransformException(null, e);
+			}
+			return transform.execute(context, root);
+		});
+	}
+
+
+	/**
+	 * Returns the input read from the specified file. The file is memory-mapped
+	 * and parsed into a node tree before execution, using multiple threads if it
+	 * is large, see {@link ParallelParser}. Files of any size are supported.
+	 *
+	 * @param input a file with SDA content, not null
+	 * @return an input
+	 */
+	public static TransformInput of(File input) {
+		Objects.requireNonNull(input, "input must not be null");
+		return new TransformInput((transform, context) -> {
+			DataNode root;
+			try {
+				root = ParallelParser.parse(input);
+			} catch (IOException | ParseException e) {
+				throw new TransformException(null, e);
+			}
+			return transform.execute(context, root);
+		});
+	}
+
+
+	/**
+	 * Returns a projection of the input read from a character stream. While
+	 * reading, nodes that the transform cannot refer to are skipped rather than
+	 * parsed, based on a static analysis of the paths in its expressions. This
+	 * reduces memory and navigation time when a transform uses few of the nodes
+	 * in its input. If the analysis cannot tell which nodes are used, the entire
+	 * input is kept.
+	 * <p>
+	 * The result is meant to be the same as that of executing the transform on
+	 * the complete input, but since it depends on that analysis, callers must opt
+	 * in to this by using this input rather than {@link #of(Reader)}.
+	 *
+	 * @param input a character input stream with SDA content, not null
+	 * @return an input
+	 */
+	public static TransformInput projected(Reader input) {
+		Objects.requireNonNull(input, "input must not be null");
+		return new TransformInput((transform, context) -> {
+			DataNode root;
+			try {
+				root = new Projection(transform).parse(input);
+			} catch (IOException | ParseException e) {
+				throw new TransformException(null, e);
+			}
+			return transform.execute(context, root);
+		});
+	}
+
+
+	/**
+	 * Returns the input read lazily from the specified file. The file is
+	 * memory-mapped and its structure verified before execution, but nodes are
+	 * only parsed when the transform navigates to them, see {@link LazyNode}.
+	 * This reduces time and memory when a transform uses a small part of a large
+	 * input.
+	 * <p>
+	 * Unlike {@link #of(File)}, the file must be UTF-8 encoded and not exceed 2
+	 * GB, and an invalid node name is only reported when the transform navigates
+	 * to it, so part of the output may have been written by then.
+	 *
+	 * @param input a file with SDA content, not null
+	 * @return an input
+	 */
+	public static TransformInput lazy(File input) {
+		Objects.requireNonNull(input, "input must not be null");
+		return new TransformInput((transform, context) -> {
+			try {
+				return transform.execute(context, LazyNode.parse(input));
+			} catch (IOException e) {
+				throw new TransformException(null, e);
+			} catch (UncheckedIOException e) { // malformed content found while navigating
+				throw new TransformException(null, e.getCause());
+			}
+		});
+	}
+
+
+	/**
+	 * Returns the input read from a character stream while the transform is
+	 * executed. The input records selected by the streamed {@code foreach}
+	 * statement are parsed and processed one at a time, and discarded
+	 * afterwards, so that the input need not fit in memory. This requires the
+	 * transform to be streamable, see {@link Transform#isStreamable()}; if not,
+	 * an exception is thrown before any input is read.
+	 *
+	 * @param input a character input stream with SDA content, not null
+	 * @return an input
+	 */
+	public static TransformInput streamed(Reader input) {
+		Objects.requireNonNull(input, "input must not be null");
+		return new TransformInput((transform, context) -> transform.stream(context, input));
+	}
+
+
+	/**
+	 * Returns the input read from the specified file while the transform is
+	 * executed. The file is memory-mapped, see {@link MappedFileReader}. This
+	 * requires the transform to be streamable.
+	 *
+	 * @param input a file with SDA content, not null
+	 * @return an input
+	 * @see #streamed(Reader)
+	 */
+	public static TransformInput streamed(File input) {
+		Objects.requireNonNull(input, "input must not be null");
+		return new TransformInput((transform, context) -> {
+			try (Reader reader = new MappedFileReader(input)) {
+				return transform.stream(context, reader);
+			} catch (IOException e) {
+				throw new TransformException(null, e);
+			}
+		});
+	}
+
+}
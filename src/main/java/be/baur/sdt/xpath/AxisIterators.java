@@ -0,0 +1,252 @@
+package be.baur.sdt.xpath;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import be.baur.sda.Node;
+
+/**
+ * Lightweight iterators for the axes of the {@link DocumentNavigator}. Jaxen
+ * asks for an axis iterator for every context node in every step, so each of
+ * these is a single object that iterates directly over a node, an array or a
+ * list, without creating views, wrappers or intermediate collections.
+ */
+final class AxisIterators {
+
+	private AxisIterators() {} // cannot construct this
+
+
+	/**
+	 * Returns an iterator over a single node.
+	 *
+	 * @param node a node, not null
+	 * @return an iterator
+	 */
+	static Iterator<Node> single(Node node) {
+		return new Chain(node, false);
+	}
+
+
+	/**
+	 * Returns an iterator over a node and its ancestors, up to the top of the tree.
+	 *
+	 * @param node a node, not null
+	 * @return an iterator
+	 */
+	static Iterator<Node> ancestorsOrSelf(Node node) {
+		return new Chain(node, true);
+	}
+
+
+	/**
+	 * Returns an iterator over the descendants of a node in document order,
+	 * optionally preceded by the node itself.
+	 *
+	 * @param node a node, not null
+	 * @param self whether to include the node itself
+	 * @return an iterator
+	 */
+	static Iterator<Node> descendants(Node node, boolean self) {
+		return new Descendants(node, self);
+	}
+
+
+	/**
+	 * Returns an iterator over the nodes in a range of an array, in ascending or
+	 * descending order.
+	 *
+	 * @param nodes   an array of nodes, not null
+	 * @param from    the start of the range, inclusive
+	 * @param to      the end of the range, exclusive
+	 * @param reverse whether to iterate from the end of the range to the start
+	 * @return an iterator
+	 */
+	static Iterator<Node> range(Node[] nodes, int from, int to, boolean reverse) {
+		return new ArrayRange(nodes, from, to, reverse);
+	}
+
+
+	/**
+	 * Returns an iterator over the nodes in a range of a list with fast random
+	 * access, in ascending or descending order.
+	 *
+	 * @param nodes   a list of nodes, not null
+	 * @param from    the start of the range, inclusive
+	 * @param to      the end of the range, exclusive
+	 * @param reverse whether to iterate from the end of the range to the start
+	 * @return an iterator
+	 */
+	static Iterator<Node> range(List<Node> nodes, int from, int to, boolean reverse) {
+		return new ListRange(nodes, from, to, reverse);
+	}
+
+
+	/*
+	 * Iterates over a node, and optionally its ancestors.
+	 */
+	private static final class Chain implements Iterator<Node> {
+
+		private Node next;
+		private final boolean up;
+
+		Chain(Node node, boolean up) {
+			this.next = node; this.up = up;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Node next() {
+			if (next == null) throw new NoSuchElementException();
+			Node node = next;
+			next = up ? node.getParent() : null;
+			return node;
+		}
+	}
+
+
+	/*
+	 * Iterates over the descendants of a node in document order. Rather than an
+	 * iterator per level, it keeps an explicit stack of the children of the nodes
+	 * on the path from the context node, with the size and the position of the
+	 * next child at each level. The children of frozen nodes are kept as arrays.
+	 */
+	@SuppressWarnings("unchecked")
+	private static final class Descendants implements Iterator<Node> {
+
+		private Object[] children = new Object[8]; // an array or list of nodes per level
+		private int[] counters = new int[16]; // the size and next position per level
+		private int depth = -1; // of the top of the stack
+		private Node next;
+
+		Descendants(Node node, boolean self) {
+			if (self)
+				next = node;
+			else {
+				push(node); next = advance();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Node next() {
+			if (next == null) throw new NoSuchElementException();
+			Node node = next;
+			push(node);
+			next = advance();
+			return node;
+		}
+
+		/*
+		 * Pushes the children of a node on the stack, if it has any.
+		 */
+		private void push(Node node) {
+
+			if (! node.isParent()) return;
+			Object nodes; int size;
+			if (node instanceof FrozenNode) {
+				Node[] array = ((FrozenNode) node).getChildArray();
+				nodes = array; size = array.length;
+			} else {
+				List<Node> list = node.nodes();
+				nodes = list; size = list.size();
+			}
+			if (size == 0) return;
+
+			if (++depth == children.length) {
+				children = Arrays.copyOf(children, depth * 2);
+				counters = Arrays.copyOf(counters, depth * 4);
+			}
+			children[depth] = nodes;
+			counters[2 * depth] = size; counters[2 * depth + 1] = 0;
+		}
+
+		/*
+		 * Returns the next child at the deepest level that has one left, popping the
+		 * levels that have none, or null at the end of the iteration.
+		 */
+		private Node advance() {
+
+			while (depth >= 0) {
+				int position = counters[2 * depth + 1];
+				if (position < counters[2 * depth]) {
+					counters[2 * depth + 1] = position + 1;
+					Object nodes = children[depth];
+					return nodes instanceof Node[] ? ((Node[]) nodes)[position] : ((List<Node>) nodes).get(position);
+				}
+				children[depth--] = null; // no longer referenced
+			}
+			return null;
+		}
+	}
+
+
+	/*
+	 * Iterates over a range of an array.
+	 */
+	private static final class ArrayRange implements Iterator<Node> {
+
+		private final Node[] nodes;
+		private final int end, step;
+		private int next;
+
+		ArrayRange(Node[] nodes, int from, int to, boolean reverse) {
+			this.nodes = nodes;
+			if (reverse) { next = to - 1; end = from - 1; step = -1; }
+			else { next = from; end = to; step = 1; }
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != end;
+		}
+
+		@Override
+		public Node next() {
+			if (next == end) throw new NoSuchElementException();
+			Node node = nodes[next];
+			next += step;
+			return node;
+		}
+	}
+
+
+	/*
+	 * Iterates over a range of a list.
+	 */
+	private static final class ListRange implements Iterator<Node> {
+
+		private final List<Node> nodes;
+		private final int end, step;
+		private int next;
+
+		ListRange(List<Node> nodes, int from, int to, boolean reverse) {
+			this.nodes = nodes;
+			if (reverse) { next = to - 1; end = from - 1; step = -1; }
+			else { next = from; end = to; step = 1; }
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != end;
+		}
+
+		@Override
+		public Node next() {
+			if (next == end) throw new NoSuchElementException();
+			Node node = nodes.get(next);
+			next += step;
+			return node;
+		}
+	}
+
+}
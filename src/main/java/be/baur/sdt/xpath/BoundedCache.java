@@ -0,0 +1,223 @@
+package be.baur.sdt.xpath;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A {@code BoundedCache} is a map with a maximum number of entries, which
+ * evicts entries that have not been used recently when that is exceeded. It
+ * keeps count of hits and misses, and is safe for use by multiple threads. A
+ * maximum size of 0 disables the cache; nothing is stored, and every lookup is
+ * a miss.
+ * <p>
+ * This cache is used to memoize the results of functions that are expensive to
+ * compute but depend on their arguments only, such as the parsing of a string.
+ * Cached values are shared, so they should be immutable.
+ * <p>
+ * Lookups take no lock, so that threads that share a cache do not wait for each
+ * other. The entries are kept in a concurrent map, and a lookup only marks its
+ * entry as used. Entries are also kept in a ring, over which a hand moves to
+ * find an entry to evict: a marked entry is unmarked and passed, and the first
+ * unmarked one is evicted (the CLOCK or second chance policy, which
+ * approximates least recently used). Adding an entry takes a lock, but only
+ * for a constant time on average, as each entry is passed at most once for
+ * every time it is used.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public final class BoundedCache<K, V> {
+
+	private volatile int maxSize; // maximum number of entries
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+	private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<K, Entry<K, V>>();
+	private Entry<K, V>[] ring; // the entries in the order of addition, guarded by this
+	private int size = 0; // the number of entries in the ring
+	private int hand = 0; // the slot of the next candidate for eviction
+
+
+	/**
+	 * Creates a cache with the specified maximum number of entries.
+	 *
+	 * @param maxSize the maximum size, 0 to disable caching
+	 * @throws IllegalArgumentException if the size is negative
+	 */
+	public BoundedCache(int maxSize) {
+		setMaxSize(maxSize);
+	}
+
+
+	/**
+	 * Returns the value cached for the specified key.
+	 *
+	 * @param key a key, not null
+	 * @return the cached value, or null if there is none
+	 */
+	public V get(K key) {
+
+		Entry<K, V> entry = entries.get(key);
+		if (entry == null) {
+			misses.increment(); return null;
+		}
+		if (! entry.used) entry.used = true;
+		hits.increment();
+		return entry.value;
+	}
+
+
+	/**
+	 * Caches a value for the specified key, evicting an entry that has not been
+	 * used recently if the cache is full.
+	 *
+	 * @param key   a key, not null
+	 * @param value a value, not null
+	 */
+	public void put(K key, V value) {
+
+		if (maxSize == 0) return;
+		synchronized (this) {
+			if (ring.length == 0) return;
+			Entry<K, V> entry = new Entry<K, V>(key, value);
+			Entry<K, V> old = entries.put(key, entry);
+			if (old != null) { // replaces the old entry in its slot
+				entry.slot = old.slot; ring[entry.slot] = entry;
+				return;
+			}
+			if (size == ring.length) evict();
+			entry.slot = size; ring[size++] = entry;
+		}
+	}
+
+
+	/**
+	 * Returns the value cached for the specified key, or computes and caches it if
+	 * there is none. The value is computed without a lock, so a value may be
+	 * computed more than once if it is requested by several threads at the same
+	 * time. A null value is returned, but not cached.
+	 *
+	 * @param key      a key, not null
+	 * @param function the function that computes a value, not null
+	 * @return the cached or computed value
+	 */
+	public V get(K key, Function<? super K, ? extends V> function) {
+		V value = get(key);
+		if (value == null) {
+			value = function.apply(key);
+			if (value != null) put(key, value);
+		}
+		return value;
+	}
+
+
+	/*
+	 * Evicts one entry from the ring, which must not be empty. The hand passes
+	 * entries that were used since it last passed them, and the last entry in
+	 * the ring is moved into the slot of the evicted one.
+	 */
+	private void evict() {
+
+		Entry<K, V> victim;
+		while ((victim = ring[hand]).used) {
+			victim.used = false;
+			if (++hand == size) hand = 0;
+		}
+		entries.remove(victim.key, victim);
+
+		Entry<K, V> last = ring[--size];
+		ring[size] = null;
+		if (last != victim) {
+			last.slot = hand; ring[hand] = last;
+		}
+		if (hand >= size) hand = 0;
+	}
+
+
+	/*
+	 * A cached value and whether it was used since the hand last passed it.
+	 */
+	private static final class Entry<K, V> {
+
+		final K key;
+		final V value;
+		volatile boolean used = false;
+		int slot; // in the ring, guarded by the cache
+
+		Entry(K key, V value) {
+			this.key = key; this.value = value;
+		}
+	}
+
+
+	/**
+	 * Returns the number of lookups that found a cached value.
+	 *
+	 * @return a number of lookups
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+
+	/**
+	 * Returns the number of lookups that did not find a cached value.
+	 *
+	 * @return a number of lookups
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+
+	/**
+	 * Returns the number of entries currently in the cache.
+	 *
+	 * @return a number of entries
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+
+	/**
+	 * Returns the maximum number of entries in the cache.
+	 *
+	 * @return a number of entries
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+
+	/**
+	 * Sets the maximum number of entries in the cache, evicting entries that have
+	 * not been used recently if there are more.
+	 *
+	 * @param maxSize the maximum size, 0 to disable caching
+	 * @throws IllegalArgumentException if the size is negative
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void setMaxSize(int maxSize) {
+		if (maxSize < 0)
+			throw new IllegalArgumentException("cache size cannot be negative");
+		while (size > maxSize) evict();
+
+		Entry<K, V>[] resized = new Entry[maxSize];
+		if (size > 0) System.arraycopy(ring, 0, resized, 0, size);
+		ring = resized;
+		this.maxSize = maxSize;
+	}
+
+
+	/**
+	 * Removes all entries from the cache. The hit and miss counters are not reset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		Arrays.fill(ring, null);
+		size = 0; hand = 0;
+	}
+
+}
@@ -0,0 +1,199 @@
+package be.baur.sdt.xpath;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jaxen.Context;
+import org.jaxen.JaxenException;
+import org.jaxen.JaxenRuntimeException;
+import org.jaxen.expr.AllNodeStep;
+import org.jaxen.expr.DefaultNameStep;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.Step;
+import org.jaxen.saxpath.Axis;
+
+import be.baur.sda.Node;
+
+/**
+ * A {@code CountedLocationPath} is the argument of a <code>count()</code> call
+ * that consists of child steps without predicates only, such as
+ * <code>count(items/item)</code>. It counts the selected nodes by walking the
+ * children of the context nodes, and returns a node-set that knows its size
+ * without selecting any nodes. The nodes are only selected if the node-set is
+ * accessed otherwise.
+ * <p>
+ * Since children of different parents are different nodes, and nodes selected
+ * for different context nodes are in different subtrees or at different depths,
+ * the count is the sum of the counts for each context node.
+ *
+ * @see PathOptimizer
+ */
+@SuppressWarnings("rawtypes")
+final class CountedLocationPath implements LocationPath {
+
+	private static final long serialVersionUID = -2319584618716232051L;
+	private final LocationPath path; // an ordered location path
+	private final String[] names; // of the children selected by each step, null for any
+
+
+	/**
+	 * Creates a counted location path from a countable one.
+	 *
+	 * @param path a location path, not null
+	 * @see #isCountable(LocationPath)
+	 */
+	CountedLocationPath(LocationPath path) {
+
+		this.path = path;
+		List<?> steps = path.getSteps();
+		names = new String[steps.size()];
+		for (int i = 0; i < names.length; i++) {
+			Object step = steps.get(i);
+			if (step instanceof DefaultNameStep && ! "*".equals(((DefaultNameStep) step).getLocalName()))
+				names[i] = ((DefaultNameStep) step).getLocalName();
+		}
+	}
+
+
+	/**
+	 * Returns true if the specified path consists of child steps without
+	 * predicates, that have a name test without prefix, a wildcard or a
+	 * <code>node()</code> test.
+	 *
+	 * @param path a location path, not null
+	 * @return true if the path can be counted
+	 */
+	static boolean isCountable(LocationPath path) {
+
+		if (path.getSteps().isEmpty()) return false;
+		for (Object object : path.getSteps()) {
+			Step step = (Step) object;
+			if (step.getAxis() != Axis.CHILD || ! step.getPredicates().isEmpty()) return false;
+			if (step instanceof AllNodeStep) continue;
+			if (! (step instanceof DefaultNameStep)) return false;
+			String prefix = ((DefaultNameStep) step).getPrefix();
+			if (prefix != null && ! prefix.isEmpty()) return false;
+		}
+		return true;
+	}
+
+
+	@Override
+	public Object evaluate(Context context) throws JaxenException {
+
+		List contextNodes = context.getNodeSet();
+		if (path.isAbsolute()) {
+			if (contextNodes.isEmpty()) return Collections.emptyList();
+			Object document = context.getNavigator().getDocumentNode(contextNodes.get(0));
+			if (document == null) return Collections.emptyList();
+			contextNodes = Collections.singletonList(document);
+		}
+
+		int count = 0;
+		for (Object contextNode : contextNodes) {
+			if (! (contextNode instanceof Node)) return path.evaluate(context);
+			count += count((Node) contextNode, 0);
+		}
+		return new Counted(count, context.duplicate());
+	}
+
+
+	/*
+	 * Returns the number of nodes selected by the steps from the specified one on,
+	 * for the specified context node.
+	 */
+	private int count(Node node, int step) {
+
+		if (! node.isParent()) return 0;
+		List<Node> children = node.nodes();
+		final int size = children.size();
+		final String name = names[step];
+
+		if (step == names.length - 1) {
+			if (name == null) return size;
+			int count = 0;
+			for (int i = 0; i < size; i++)
+				if (children.get(i).getName().equals(name)) ++count;
+			return count;
+		}
+
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			Node child = children.get(i);
+			if (name == null || child.getName().equals(name))
+				count += count(child, step + 1);
+		}
+		return count;
+	}
+
+
+	/*
+	 * A node-set of known size, of which the nodes are selected on first access.
+	 */
+	private final class Counted extends AbstractList<Object> {
+
+		private final int size;
+		private final Context context;
+		private List nodes;
+
+		Counted(int size, Context context) {
+			this.size = size; this.context = context;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Object get(int index) {
+			if (nodes == null) {
+				try {
+					nodes = (List) path.evaluate(context);
+				} catch (JaxenException e) {
+					throw new JaxenRuntimeException(e);
+				}
+			}
+			return nodes.get(index);
+		}
+	}
+
+
+	@Override
+	public void addStep(Step step) {
+		path.addStep(step);
+	}
+
+
+	@Override
+	public List getSteps() {
+		return path.getSteps();
+	}
+
+
+	@Override
+	public boolean isAbsolute() {
+		return path.isAbsolute();
+	}
+
+
+	@Override
+	public String getText() {
+		return path.getText();
+	}
+
+
+	@Override
+	public Expr simplify() {
+		return this;
+	}
+
+
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+
+}
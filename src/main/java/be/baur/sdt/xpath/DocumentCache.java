@@ -0,0 +1,170 @@
+package be.baur.sdt.xpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.io.ParseException;
+
+/**
+ * A {@code DocumentCache} holds SDA documents loaded from files, so that
+ * repeated requests for the same document (like a <code>document()</code> call
+ * inside a <code>foreach</code>) do not read and parse the file over and over
+ * again.
+ * <p>
+ * Documents are keyed by canonical path, and a cached document is only used if
+ * the last-modified time and size of the file are unchanged; otherwise it is
+ * reloaded. The cache is limited to a maximum total file size, and the least
+ * recently used documents are evicted when that is exceeded. The maximum size
+ * in bytes is set with the system property {@code sdt.document.cache.size}
+ * (default 64 MB); a value of 0 disables caching.
+ * <p>
+ * The cache is shared by all transforms and safe for use by multiple threads.
+ * Documents are cached as frozen trees, which are shared by all requests
+ * without copying, see {@link FrozenNode}. A frozen root has a document node
+ * as its parent, and cannot be modified. When caching is disabled, every
+ * request returns a new, mutable and parentless root, as if there was no
+ * cache. Files are read with a {@link ParallelParser}.
+ *
+ * @see DocumentNavigator#getDocument(String)
+ */
+public final class DocumentCache {
+
+	/** The system property that sets the maximum cache size in bytes. */
+	public static final String SIZE_PROPERTY = "sdt.document.cache.size";
+	private static final long DEFAULT_SIZE = 64L * 1024 * 1024;
+
+	private final long maxSize; // maximum total file size of cached documents
+	private long size = 0; // current total file size of cached documents
+	private long hits = 0, misses = 0;
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private static final class Entry {
+		final long modified, length;
+		final FrozenNode root;
+		Entry(long modified, long length, FrozenNode root) {
+			this.modified = modified; this.length = length; this.root = root;
+		}
+	}
+
+
+	/**
+	 * Creates a cache with the maximum size specified by the system property, or
+	 * the default size if the property is not set or invalid.
+	 */
+	DocumentCache() {
+		long max;
+		try {
+			max = Long.parseLong(System.getProperty(SIZE_PROPERTY, String.valueOf(DEFAULT_SIZE)).trim());
+		} catch (NumberFormatException e) {
+			max = DEFAULT_SIZE;
+		}
+		this.maxSize = Math.max(max, 0);
+	}
+
+
+	/**
+	 * Returns the document loaded from the specified file. The document is
+	 * obtained from the cache if the file has not changed since it was cached, or
+	 * is read, parsed and cached otherwise. If caching is disabled, the file is
+	 * read and parsed, and its root is returned as is.
+	 *
+	 * @param file the file to load, not null
+	 * @return the root node of a frozen document, or of a mutable document if
+	 *         caching is disabled
+	 * @throws IOException    if an I/O operation failed
+	 * @throws ParseException if the file content could not be parsed
+	 */
+	public DataNode get(File file) throws IOException, ParseException {
+
+		if (maxSize == 0) {
+			synchronized (this) { ++misses; }
+			return ParallelParser.parse(file);
+		}
+
+		final String key = file.getCanonicalPath();
+		final long modified = file.lastModified(), length = file.length();
+
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.modified == modified && entry.length == length) {
+				++hits; return entry.root;
+			}
+			++misses;
+		}
+
+		/*
+		 * Documents are loaded outside of the lock, so threads loading different files
+		 * do not block each other. Two threads loading the same file at the same time
+		 * may both parse it; the last one to finish replaces the entry of the other.
+		 */
+		FrozenNode root = FrozenNode.freeze(ParallelParser.parse(file));
+		if (length > maxSize) return root; // too large to be cached at all
+
+		synchronized (this) {
+			Entry old = entries.put(key, new Entry(modified, length, root));
+			if (old != null) size -= old.length;
+			size += length;
+
+			Iterator<Entry> i = entries.values().iterator();
+			while (size > maxSize && i.hasNext()) { // evict least recently used documents
+				size -= i.next().length; i.remove();
+			}
+		}
+		return root;
+	}
+
+
+	/**
+	 * Returns the number of requests served from the cache.
+	 *
+	 * @return a number of requests
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+
+	/**
+	 * Returns the number of requests that required a document to be loaded.
+	 *
+	 * @return a number of requests
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+
+	/**
+	 * Returns the total file size of the documents currently in the cache.
+	 *
+	 * @return a size in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+
+	/**
+	 * Returns the maximum total file size of the documents in the cache.
+	 *
+	 * @return a size in bytes
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+
+	/**
+	 * Removes all documents from the cache. The hit and miss counters are not
+	 * reset.
+	 */
+	public synchronized void clear() {
+		entries.clear(); size = 0;
+	}
+
+}
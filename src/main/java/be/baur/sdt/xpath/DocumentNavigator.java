@@ -2,8 +2,10 @@ package be.baur.sdt.xpath;
 
 import java.io.File;
 import java.io.Reader;
-import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
 
 import org.jaxen.DefaultNavigator;
 import org.jaxen.FunctionCallException;
@@ -32,6 +34,8 @@ public class DocumentNavigator extends DefaultNavigator {
 
 	private static final long serialVersionUID = 3623355213625129369L;
 	private static final DocumentNavigator SINGLETON = new DocumentNavigator();
+	private static final DocumentCache CACHE = new DocumentCache();
+	private static final TinyNavigator TINY = TinyNavigator.SINGLETON; // for the nodes of tiny trees
 
 	/**
 	 * Non-public default constructor, the DocumentNavigator is a singleton.
@@ -52,6 +56,8 @@ public class DocumentNavigator extends DefaultNavigator {
 
 	/**
 	 * Retrieve an <code>Iterator</code> matching the <code>child</code> XPath axis.
+	 * The children of a frozen node are iterated as an array, and those of others
+	 * by the iterator of their list.
 	 *
 	 * @param contextNode the original context node
 	 *
@@ -60,10 +66,15 @@ public class DocumentNavigator extends DefaultNavigator {
 	@Override
     public Iterator getChildAxisIterator(Object contextNode)
     {
+    	if (contextNode instanceof TinyNode) return TINY.getChildAxisIterator(contextNode);
     	Node node = ((Node) contextNode);
-    	if (node.isParent()) 
-    		return node.nodes().iterator();
-    	return JaxenConstants.EMPTY_ITERATOR;
+    	if (! node.isParent())
+    		return JaxenConstants.EMPTY_ITERATOR;
+    	if (node instanceof FrozenNode) {
+    		Node[] children = ((FrozenNode) node).getChildArray();
+    		return AxisIterators.range(children, 0, children.length, false);
+    	}
+    	return node.nodes().iterator();
     }
 
 
@@ -78,14 +89,188 @@ public class DocumentNavigator extends DefaultNavigator {
 	@Override
     public Iterator getParentAxisIterator(Object contextNode)
     {
+    	if (contextNode instanceof TinyNode) return TINY.getParentAxisIterator(contextNode);
     	Node parent = ((Node) contextNode).getParent();
         if (parent != null) {
-        	return Collections.singletonList(parent).iterator();
+        	return AxisIterators.single(parent);
         }
     	return JaxenConstants.EMPTY_ITERATOR;
     }
 
 
+	/**
+	 * Retrieve an <code>Iterator</code> matching the <code>self</code> XPath axis.
+	 *
+	 * @param contextNode the original context node
+	 *
+	 * @return an Iterator capable of traversing the axis, not null
+	 */
+	@Override
+    public Iterator getSelfAxisIterator(Object contextNode)
+    {
+    	if (contextNode instanceof TinyNode) return TINY.getSelfAxisIterator(contextNode);
+    	return AxisIterators.single((Node) contextNode);
+    }
+
+
+	/**
+	 * Retrieve an <code>Iterator</code> matching the <code>ancestor</code> XPath
+	 * axis, in reverse document order.
+	 *
+	 * @param contextNode the original context node
+	 *
+	 * @return an Iterator capable of traversing the axis, not null
+	 */
+	@Override
+    public Iterator getAncestorAxisIterator(Object contextNode)
+    {
+    	if (contextNode instanceof TinyNode) return TINY.getAncestorAxisIterator(contextNode);
+    	Node parent = ((Node) contextNode).getParent();
+        if (parent != null) {
+        	return AxisIterators.ancestorsOrSelf(parent);
+        }
+    	return JaxenConstants.EMPTY_ITERATOR;
+    }
+
+
+	/**
+	 * Retrieve an <code>Iterator</code> matching the <code>ancestor-or-self</code>
+	 * XPath axis, in reverse document order.
+	 *
+	 * @param contextNode the original context node
+	 *
+	 * @return an Iterator capable of traversing the axis, not null
+	 */
+	@Override
+    public Iterator getAncestorOrSelfAxisIterator(Object contextNode)
+    {
+    	if (contextNode instanceof TinyNode) return TINY.getAncestorOrSelfAxisIterator(contextNode);
+    	return AxisIterators.ancestorsOrSelf((Node) contextNode);
+    }
+
+
+	/**
+	 * Retrieve an <code>Iterator</code> matching the <code>descendant</code> XPath
+	 * axis. The descendants are traversed with an explicit stack, rather than an
+	 * iterator for every level.
+	 *
+	 * @param contextNode the original context node
+	 *
+	 * @return an Iterator capable of traversing the axis, not null
+	 */
+	@Override
+    public Iterator getDescendantAxisIterator(Object contextNode)
+    {
+    	if (contextNode instanceof TinyNode) return TINY.getDescendantAxisIterator(contextNode);
+    	Node node = (Node) contextNode;
+    	if (! node.isParent() || node.nodes().isEmpty())
+    		return JaxenConstants.EMPTY_ITERATOR;
+    	return AxisIterators.descendants(node, false);
+    }
+
+
+	/**
+	 * Retrieve an <code>Iterator</code> matching the <code>descendant-or-self</code>
+	 * XPath axis. The descendants are traversed with an explicit stack, rather than
+	 * an iterator for every level.
+	 *
+	 * @param contextNode the original context node
+	 *
+	 * @return an Iterator capable of traversing the axis, not null
+	 */
+	@Override
+    public Iterator getDescendantOrSelfAxisIterator(Object contextNode)
+    {
+    	if (contextNode instanceof TinyNode) return TINY.getDescendantOrSelfAxisIterator(contextNode);
+    	return AxisIterators.descendants((Node) contextNode, true);
+    }
+
+
+	/**
+	 * Retrieve an <code>Iterator</code> matching the <code>following-sibling</code>
+	 * XPath axis. Iteration starts at the position of the context node in its
+	 * parent, which is known for a frozen node, and found by a search otherwise.
+	 *
+	 * @param contextNode the original context node
+	 *
+	 * @return an Iterator capable of traversing the axis, not null
+	 */
+	@Override
+    public Iterator getFollowingSiblingAxisIterator(Object contextNode)
+    {
+    	if (contextNode instanceof TinyNode) return TINY.getFollowingSiblingAxisIterator(contextNode);
+    	Node node = (Node) contextNode, parent = node.getParent();
+    	if (parent == null)
+    		return JaxenConstants.EMPTY_ITERATOR;
+    	List<Node> siblings = parent.nodes();
+    	return range(parent, siblings, position(node, siblings) + 1, siblings.size(), false);
+    }
+
+
+	/**
+	 * Retrieve an <code>Iterator</code> matching the <code>preceding-sibling</code>
+	 * XPath axis, in reverse document order. Iteration starts at the position of
+	 * the context node in its parent, which is known for a frozen node, and found
+	 * by a search otherwise.
+	 *
+	 * @param contextNode the original context node
+	 *
+	 * @return an Iterator capable of traversing the axis, not null
+	 */
+	@Override
+    public Iterator getPrecedingSiblingAxisIterator(Object contextNode)
+    {
+    	if (contextNode instanceof TinyNode) return TINY.getPrecedingSiblingAxisIterator(contextNode);
+    	Node node = (Node) contextNode, parent = node.getParent();
+    	if (parent == null)
+    		return JaxenConstants.EMPTY_ITERATOR;
+    	List<Node> siblings = parent.nodes();
+    	return range(parent, siblings, 0, position(node, siblings), true);
+    }
+
+
+	/*
+	 * Returns an iterator over a range of the children of a parent node. The
+	 * children of a frozen node are iterated as an array, and those of others by
+	 * index, unless the list has no fast random access.
+	 */
+	private static Iterator range(Node parent, List<Node> children, int from, int to, boolean reverse) {
+
+		if (from >= to)
+			return JaxenConstants.EMPTY_ITERATOR;
+		if (parent instanceof FrozenNode)
+			return AxisIterators.range(((FrozenNode) parent).getChildArray(), from, to, reverse);
+		if (children instanceof RandomAccess)
+			return AxisIterators.range(children, from, to, reverse);
+
+		if (! reverse)
+			return children.subList(from, to).iterator();
+		ListIterator<Node> iterator = children.listIterator(to);
+		return new Iterator<Node>() {
+			@Override public boolean hasNext() { return iterator.hasPrevious(); }
+			@Override public Node next() { return iterator.previous(); }
+		};
+	}
+
+
+	/*
+	 * Returns the position of a node in the children of its parent. The position
+	 * of a frozen node is known, and the children of other parents are searched,
+	 * since they may have changed since the last search.
+	 */
+	static int position(Node node, List<Node> siblings) {
+
+		if (node instanceof FrozenNode)
+			return ((FrozenNode) node).getPosition();
+		int i = 0;
+		for (Node sibling : siblings) {
+			if (sibling == node) return i;
+			++i;
+		}
+		return -1;
+	}
+
+
 	/**
 	 * Throws an {@code UnsupportedAxisException}.
 	 */
@@ -118,6 +303,7 @@ public class DocumentNavigator extends DefaultNavigator {
 	@Override
     public Object getDocumentNode(Object contextNode)
     {
+    	if (contextNode instanceof TinyNode) return TINY.getDocumentNode(contextNode);
         Node root = ((Node) contextNode).root();
         return root instanceof DocumentNode ? root : null;
     }
@@ -131,6 +317,11 @@ public class DocumentNavigator extends DefaultNavigator {
 	 * <i>Note: this method will modify the data node (add it to a parent) and may
 	 * have side effects (consider supplying a copy of the real root node). This
 	 * method is experimental and may be obsoleted or removed in the future.</i>
+	 * <p>
+	 * For the root of a frozen tree, the existing document node is returned, and
+	 * for another frozen node, a document node with a frozen copy of it.
+	 * 
+	 * @see FrozenNode
 	 * 
 	 * @see DocumentNode
 	 * 
@@ -140,6 +331,8 @@ public class DocumentNavigator extends DefaultNavigator {
 	 */
     public static DocumentNode newDocumentNode(DataNode root)
     {
+    	if (root instanceof FrozenNode) // frozen roots have a document node already
+    		return FrozenNode.freeze(root).getDocument();
     	return new DocumentNode(root);
     }
 
@@ -191,12 +384,18 @@ public class DocumentNavigator extends DefaultNavigator {
 	@Override
     public Object getParentNode(Object contextNode)
     {
+    	if (contextNode instanceof TinyNode) return TINY.getParentNode(contextNode);
     	return ((Node) contextNode).getParent();
     }
 
 
 	/**
-	 * Loads an SDA document from the given URI.
+	 * Loads an SDA document from the given URI. Documents are cached, so repeated
+	 * requests for an unchanged file do not read and parse it again. The root node
+	 * of a frozen document is returned, see {@link FrozenNode}, unless caching is
+	 * disabled, in which case a new, mutable root node is returned.
+	 *
+	 * @see #getDocumentCache()
 	 *
 	 * @param uri the URI of the document to load
 	 *
@@ -208,13 +407,25 @@ public class DocumentNavigator extends DefaultNavigator {
     public Object getDocument(String uri) throws FunctionCallException
     {
     	try {
-			return SDA.parse(new File(uri));
+			return CACHE.get(new File(uri));
 		} catch (Exception e) {
 			throw new FunctionCallException(e.getMessage(), e);
 		}
     }
 
 
+	/**
+	 * Returns the cache used for documents loaded by {@link #getDocument(String)}.
+	 * The cache is shared by all transforms.
+	 *
+	 * @return the document cache
+	 */
+    public static DocumentCache getDocumentCache()
+    {
+    	return CACHE;
+    }
+
+
 	/**
 	 * Loads an SDA document from the given character stream.
 	 *
@@ -256,6 +467,7 @@ public class DocumentNavigator extends DefaultNavigator {
 
 	@Override
 	public String getElementName(Object element) {
+    	if (element instanceof TinyNode) return TINY.getElementName(element);
 		return ((Node) element).getName();
 	}
 
@@ -265,6 +477,7 @@ public class DocumentNavigator extends DefaultNavigator {
 	 */
 	@Override
 	public String getElementQName(Object element) {
+    	if (element instanceof TinyNode) return TINY.getElementQName(element);
 		// No namespaces in SDA so local and qualified names are the same
 		return ((Node) element).getName();
 	}
@@ -299,14 +512,14 @@ public class DocumentNavigator extends DefaultNavigator {
 
 	@Override
 	public boolean isDocument(Object object) {
-		return (object instanceof DocumentNode);
+		return (object instanceof DocumentNode) || TINY.isDocument(object);
 	}
 
 
 	@Override
 	public boolean isElement(Object object) {
 		// All SDA nodes except the document node are considered elements
-		return (object instanceof DocumentNode) ? false : (object instanceof Node);
+		return (object instanceof DocumentNode) ? false : (object instanceof Node) || TINY.isElement(object);
 	}
 
 
@@ -371,6 +584,7 @@ public class DocumentNavigator extends DefaultNavigator {
 
 	@Override
 	public String getElementStringValue(Object element) {
+    	if (element instanceof TinyNode) return TINY.getElementStringValue(element);
 		if (element instanceof DataNode)
 			return ((DataNode) element).getValue();
 		else
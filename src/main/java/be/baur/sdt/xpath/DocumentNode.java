@@ -1,6 +1,8 @@
 package be.baur.sdt.xpath;
 
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import be.baur.sda.AbstractNode;
 import be.baur.sda.DataNode;
@@ -13,6 +15,9 @@ import be.baur.sda.Node;
  */
 final class DocumentNode extends AbstractNode {
 
+	private volatile NameIndex index; // built on first use, for frozen documents only
+	private final Map<Object, Object> attachments = new ConcurrentHashMap<Object, Object>();
+
 	/**
 	 * Creates a document node containing the specified root node. This is not a
 	 * public class; only the navigator should create document nodes.
@@ -45,6 +50,50 @@ final class DocumentNode extends AbstractNode {
 	}
 
 
+	/**
+	 * Returns the name index of this document, which is built on the first call.
+	 * Only frozen documents are indexed, since other documents may change.
+	 *
+	 * @return a name index, or null if the root node is not frozen
+	 */
+	NameIndex getNameIndex() {
+
+		NameIndex result = index;
+		if (result == null && nodes().get(0) instanceof FrozenNode) {
+			synchronized (this) {
+				if ((result = index) == null)
+					index = result = new NameIndex(this);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the object attached to this document under the specified key.
+	 *
+	 * @param key a key, not null
+	 * @return an object, or null if none is attached
+	 */
+	Object getAttachment(Object key) {
+		return attachments.get(key);
+	}
+
+
+	/**
+	 * Attaches an object to this document under the specified key, unless one is
+	 * attached already.
+	 *
+	 * @param key   a key, not null
+	 * @param value an object, not null
+	 * @return the attached object
+	 */
+	Object attach(Object key, Object value) {
+		Object old = attachments.putIfAbsent(key, value);
+		return old != null ? old : value;
+	}
+
+
 	/**
 	 * Returns a string representing the root node.
 	 */	
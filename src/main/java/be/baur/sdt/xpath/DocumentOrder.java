@@ -0,0 +1,172 @@
+package be.baur.sdt.xpath;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import be.baur.sda.Node;
+
+/**
+ * {@code DocumentOrder} sorts node-sets into document order. Rather than walking
+ * the ancestors and siblings of two nodes on every comparison, like the node
+ * comparator of Jaxen does, every node is given a sort key once, so that nodes
+ * are compared by integers:
+ * <ul>
+ * <li>a node in a frozen document is keyed by its pre-order ordinal, which is
+ * kept with the node, see {@link FrozenNode#getOrdinal()};
+ * <li>a node in any other document is keyed by its position and those of its
+ * ancestors in their parents, which are computed for each sort, since the
+ * document may have changed in the meantime; the positions of the children of
+ * a parent are found in one pass over them, and kept for the rest of the sort;
+ * <li>a node in a {@link TinyTree} is keyed by its number, which is its
+ * position in document order.
+ * </ul>
+ * Nodes in different documents are kept together, in the order in which the
+ * documents first appear in the node-set.
+ */
+final class DocumentOrder {
+
+	private static final int[] UNKNOWN = { Integer.MAX_VALUE }; // goes last
+
+	private DocumentOrder() {} // cannot construct this
+
+
+	/**
+	 * Sorts a list of nodes into document order, in place.
+	 *
+	 * @param nodes a modifiable list of nodes, not null
+	 */
+	static void sort(List<Object> nodes) {
+
+		final int size = nodes.size();
+		if (size < 2) return;
+
+		Map<Object, Integer> documents = new IdentityHashMap<Object, Integer>();
+		Paths paths = new Paths(); // of ancestors, in unfrozen documents
+		Keyed[] keyed = new Keyed[size];
+		for (int i = 0; i < size; i++)
+			keyed[i] = new Keyed(nodes.get(i), key(nodes.get(i), documents, paths));
+
+		Arrays.sort(keyed);
+		for (int i = 0; i < size; i++)
+			nodes.set(i, keyed[i].node);
+	}
+
+
+	/*
+	 * Returns the sort key of a node; the number of its document, followed by its
+	 * ordinal or its path.
+	 */
+	private static int[] key(Object object, Map<Object, Integer> documents, Paths paths) {
+
+		if (object instanceof TinyNode) { // numbered in document order
+			TinyNode tiny = (TinyNode) object;
+			Integer document = documents.get(tiny.getTree());
+			if (document == null) documents.put(tiny.getTree(), document = documents.size());
+			return new int[] { document, tiny.getNumber() };
+		}
+		if (! (object instanceof Node)) return UNKNOWN;
+		Node node = (Node) object, root = node.root();
+
+		Integer document = documents.get(root);
+		if (document == null) documents.put(root, document = documents.size());
+
+		if (node instanceof FrozenNode) // the document node, if any, has path { document }
+			return new int[] { document, ((FrozenNode) node).getOrdinal() };
+		return path(node, document, paths);
+	}
+
+
+	/*
+	 * Returns the number of a document followed by the positions of a node and its
+	 * ancestors, top down. The paths of ancestors are kept, so that nodes with a
+	 * common parent do not compute the same path twice.
+	 */
+	private static int[] path(Node node, int document, Paths paths) {
+
+		int[] path = paths.get(node);
+		if (path != null) return path;
+
+		/*
+		 * Go up until an ancestor with a known path or the top of the tree is found,
+		 * then come back down, to avoid recursion on deep trees.
+		 */
+		Deque<Node> ancestors = new ArrayDeque<Node>();
+		Node parent;
+		while ((parent = node.getParent()) != null && (path = paths.get(parent)) == null) {
+			ancestors.push(node); node = parent;
+		}
+		if (parent == null)
+			path = new int[] { document };
+		else
+			path = paths.extend(path, node, parent);
+		paths.put(node, path);
+
+		while (! ancestors.isEmpty()) {
+			parent = node; node = ancestors.pop();
+			paths.put(node, path = paths.extend(path, node, parent));
+		}
+		return path;
+	}
+
+
+	/*
+	 * The paths of the nodes in unfrozen documents that were keyed during a sort,
+	 * and the positions of the children of their parents.
+	 */
+	@SuppressWarnings("serial")
+	private static final class Paths extends IdentityHashMap<Node, int[]> {
+
+		private final Map<Node, Map<Node, Integer>> positions = new IdentityHashMap<Node, Map<Node, Integer>>();
+
+		/*
+		 * Returns the path of a parent, extended with the position of a child.
+		 */
+		int[] extend(int[] path, Node child, Node parent) {
+			int[] result = Arrays.copyOf(path, path.length + 1);
+			result[path.length] = position(child, parent);
+			return result;
+		}
+
+		private int position(Node child, Node parent) {
+
+			if (child instanceof FrozenNode)
+				return ((FrozenNode) child).getPosition();
+
+			Map<Node, Integer> children = positions.get(parent);
+			if (children == null) {
+				positions.put(parent, children = new IdentityHashMap<Node, Integer>());
+				int i = 0;
+				for (Node node : parent.nodes()) children.put(node, i++);
+			}
+			return children.get(child);
+		}
+	}
+
+
+	/*
+	 * A node and its sort key.
+	 */
+	private static final class Keyed implements Comparable<Keyed> {
+
+		final Object node;
+		final int[] key;
+
+		Keyed(Object node, int[] key) {
+			this.node = node; this.key = key;
+		}
+
+		@Override
+		public int compareTo(Keyed other) {
+			final int[] k1 = key, k2 = other.key;
+			final int length = Math.min(k1.length, k2.length);
+			for (int i = 0; i < length; i++)
+				if (k1[i] != k2[i]) return k1[i] < k2[i] ? -1 : 1;
+			return k1.length - k2.length; // an ancestor comes before its descendants
+		}
+	}
+
+}
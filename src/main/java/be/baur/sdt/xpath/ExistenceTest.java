@@ -0,0 +1,207 @@
+package be.baur.sdt.xpath;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
+import org.jaxen.JaxenException;
+import org.jaxen.expr.BinaryExpr;
+import org.jaxen.expr.EqualityExpr;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.NumberExpr;
+import org.jaxen.expr.PathExpr;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.RelationalExpr;
+import org.jaxen.expr.Step;
+
+/**
+ * An {@code ExistenceTest} evaluates a boolean expression that only tests
+ * whether a path selects any nodes, such as <code>orders/order[amount &gt;
+ * 1000]</code>, <code>count(item) &gt; 0</code> or <code>not(item)</code>.
+ * Rather than selecting all nodes and then testing for emptiness, the steps of
+ * the path are evaluated depth first, one context node at a time, and the
+ * evaluation stops at the first node found.
+ * <p>
+ * A step without predicates, or with predicates that do not depend on the
+ * context position or size, iterates over its axis and tests each node in
+ * turn. Other steps, and indexed steps, are evaluated as usual.
+ *
+ * @see SDAXPath#booleanValueOf(Object)
+ */
+final class ExistenceTest {
+
+	private final Expr filter; // the filter expression of a path expression, or null
+	private final boolean absolute; // whether the path starts at the document node
+	private final Step[] steps;
+	private final IndexedNameStep.Predicates[] lazy; // per step, set if its axis is iterated
+	private final boolean negated; // whether the test is for non-existence
+
+
+	private ExistenceTest(Expr filter, LocationPath path, boolean negated) {
+
+		this.filter = filter; this.negated = negated;
+		this.absolute = path.isAbsolute();
+		List<?> list = path.getSteps();
+		steps = list.toArray(new Step[list.size()]);
+		lazy = new IndexedNameStep.Predicates[steps.length];
+
+		for (int i = 0; i < steps.length; i++) {
+			Step step = steps[i];
+			if (step instanceof IndexedNameStep || step instanceof HashedChildStep) continue;
+			List<?> predicates = step.getPredicates();
+			if (! PathOptimizer.positionFree(predicates)) continue;
+			lazy[i] = new IndexedNameStep.Predicates();
+			for (Object predicate : predicates)
+				lazy[i].addPredicate((Predicate) predicate);
+		}
+	}
+
+
+	/**
+	 * Returns an existence test for the specified expression, or null if it is not
+	 * one. An existence test is a location path or path expression, possibly used
+	 * as the argument of <code>boolean()</code>, <code>not()</code>, or
+	 * <code>count()</code> compared with 0 or 1.
+	 *
+	 * @param expr an expression, not null
+	 * @return an existence test, or null
+	 */
+	static ExistenceTest compile(Expr expr) {
+		return compile(expr, false);
+	}
+
+
+	private static ExistenceTest compile(Expr expr, boolean negated) {
+
+		if (expr instanceof LocationPath)
+			return new ExistenceTest(null, (LocationPath) expr, negated);
+
+		if (expr instanceof PathExpr) {
+			PathExpr path = (PathExpr) expr;
+			if (path.getLocationPath() == null) return null;
+			return new ExistenceTest(path.getFilterExpr(), path.getLocationPath(), negated);
+		}
+
+		if (expr instanceof FunctionCallExpr) {
+			FunctionCallExpr call = (FunctionCallExpr) expr;
+			if (call.getPrefix() != null && ! call.getPrefix().isEmpty() || call.getParameters().size() != 1)
+				return null;
+			Expr argument = (Expr) call.getParameters().get(0);
+			switch (call.getFunctionName()) {
+				case "boolean": return compile(argument, negated);
+				case "not": return compile(argument, ! negated);
+				default: return null;
+			}
+		}
+
+		if (expr instanceof EqualityExpr || expr instanceof RelationalExpr)
+			return compare((BinaryExpr) expr, negated);
+
+		return null;
+	}
+
+
+	/*
+	 * Returns an existence test for a count() compared with 0 or 1, like
+	 * <code>count(item) &gt; 0</code> or <code>0 = count(item)</code>, or null.
+	 */
+	private static ExistenceTest compare(BinaryExpr expr, boolean negated) {
+
+		String operator = expr.getOperator();
+		Expr count = expr.getLHS(), number = expr.getRHS();
+		if (count instanceof NumberExpr) { // put count() on the left
+			count = number; number = expr.getLHS();
+			switch (operator) {
+				case "<": operator = ">"; break;
+				case ">": operator = "<"; break;
+				case "<=": operator = ">="; break;
+				case ">=": operator = "<="; break;
+			}
+		}
+		if (! (number instanceof NumberExpr && count instanceof FunctionCallExpr)) return null;
+
+		FunctionCallExpr call = (FunctionCallExpr) count;
+		if (call.getPrefix() != null && ! call.getPrefix().isEmpty()
+			|| ! call.getFunctionName().equals("count") || call.getParameters().size() != 1) return null;
+		Expr argument = (Expr) call.getParameters().get(0);
+		if (! (argument instanceof LocationPath || argument instanceof PathExpr)) return null;
+
+		double n = ((NumberExpr) number).getNumber().doubleValue();
+		boolean exists;
+		if (n == 0 && (operator.equals(">") || operator.equals("!="))) exists = true;
+		else if (n == 1 && operator.equals(">=")) exists = true;
+		else if (n == 0 && (operator.equals("=") || operator.equals("<="))) exists = false;
+		else if (n == 1 && operator.equals("<")) exists = false;
+		else return null;
+
+		return compile(argument, exists ? negated : ! negated);
+	}
+
+
+	/**
+	 * Evaluates this test in the specified context. If the filter expression of a
+	 * path expression does not yield a node-set, its value is used as the only
+	 * context node of the path, as in a regular evaluation, so the expression is
+	 * never evaluated twice.
+	 *
+	 * @param context the evaluation context, not null
+	 * @return the boolean result
+	 * @throws JaxenException if evaluation fails
+	 */
+	@SuppressWarnings("rawtypes")
+	boolean evaluate(Context context) throws JaxenException {
+
+		final ContextSupport support = context.getContextSupport();
+		List nodes = context.getNodeSet();
+
+		if (filter != null) {
+			Object result = filter.evaluate(context);
+			nodes = (result instanceof List) ? (List) result : Collections.singletonList(result);
+		}
+		else if (absolute) {
+			if (nodes.isEmpty()) return negated;
+			Object document = support.getNavigator().getDocumentNode(nodes.get(0));
+			if (document == null) return negated;
+			nodes = Collections.singletonList(document);
+		}
+
+		for (Object node : nodes)
+			if (exists(0, node, support)) return ! negated;
+		return negated;
+	}
+
+
+	/*
+	 * Returns true if the steps from the specified one on select a node for the
+	 * specified context node.
+	 */
+	@SuppressWarnings("rawtypes")
+	private boolean exists(int index, Object node, ContextSupport support) throws JaxenException {
+
+		if (index == steps.length) return true;
+		final Step step = steps[index];
+
+		if (lazy[index] != null) {
+			final boolean filtered = ! step.getPredicates().isEmpty();
+			Iterator axis = step.axisIterator(node, support);
+			while (axis.hasNext()) {
+				Object next = axis.next();
+				if (! step.matches(next, support)) continue;
+				if (filtered && lazy[index].filter(Collections.singletonList(next), support).isEmpty()) continue;
+				if (exists(index + 1, next, support)) return true;
+			}
+			return false;
+		}
+
+		Context stepContext = new Context(support);
+		stepContext.setNodeSet(Collections.singletonList(node));
+		for (Object next : step.evaluate(stepContext))
+			if (exists(index + 1, next, support)) return true;
+		return false;
+	}
+
+}
@@ -0,0 +1,207 @@
+package be.baur.sdt.xpath;
+
+import java.util.Collections;
+import java.util.List;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.Node;
+
+/**
+ * A {@code FrozenNode} is an immutable data node. A frozen tree is created by
+ * {@link #freeze(DataNode)}, which copies a data node and its descendants into
+ * frozen nodes, and wraps the copy in a document node. Any attempt to modify a
+ * frozen node fails with an {@code UnsupportedOperationException}.
+ * <p>
+ * Since a frozen tree never changes after it has been created, it can be
+ * navigated by many threads at the same time without locks, for example by
+ * transforms that run concurrently on the same reference document. As usual,
+ * the tree must be safely published to other threads, as is done by an
+ * executor service or a concurrent collection. Because its root already has a
+ * document node, no copy is needed to wrap it in one.
+ *
+ * @see DocumentNavigator#newDocumentNode(DataNode)
+ */
+public final class FrozenNode extends DataNode {
+
+	private static final Node[] NONE = new Node[0];
+	private final List<Node> children; // an unmodifiable list, empty for a leaf
+	private final Node[] array; // the same children, for iteration by the navigator
+	private final int position; // the position of this node in its parent
+	private final int ordinal; // the number of this node in document order
+	private final boolean frozen; // false during construction only
+
+
+	/*
+	 * Creates a frozen copy of the specified node and its descendants, which are
+	 * numbered in document order from the next number in the counter.
+	 */
+	private FrozenNode(DataNode node, int position, int[] counter) {
+
+		super(node.getName(), node.getValue());
+		this.position = position;
+		this.ordinal = counter[0]++;
+		if (node.isParent()) {
+			super.add(null); // a parent, even if it has no children
+			int i = 0;
+			for (Node child : node.nodes())
+				super.add(new FrozenNode((DataNode) child, i++, counter));
+			children = Collections.unmodifiableList(super.nodes());
+			array = children.isEmpty() ? NONE : children.toArray(new Node[children.size()]);
+		}
+		else {
+			children = Collections.emptyList(); array = NONE;
+		}
+		frozen = true;
+	}
+
+
+	/**
+	 * Returns a frozen copy of the specified node as the root of a new document.
+	 * If the node is already the root of a frozen document, it is returned as is.
+	 *
+	 * @param node the node to freeze, not null
+	 * @return the root of a frozen document
+	 */
+	public static FrozenNode freeze(DataNode node) {
+
+		if (node instanceof FrozenNode && node.getParent() instanceof DocumentNode)
+			return (FrozenNode) node;
+
+		FrozenNode root = new FrozenNode(node, 0, new int[1]);
+		new DocumentNode(root); // becomes the parent of the root
+		return root;
+	}
+
+
+	/**
+	 * Returns the document node of this frozen tree.
+	 *
+	 * @return a document node
+	 */
+	DocumentNode getDocument() {
+		return (DocumentNode) root();
+	}
+
+
+	/**
+	 * Returns the position of this node in the children of its parent, starting at
+	 * 0. Since a frozen tree does not change, this is known without a search.
+	 *
+	 * @return a position
+	 */
+	int getPosition() {
+		return position;
+	}
+
+
+	/**
+	 * Returns the ordinal of this node, that is its number in document order,
+	 * starting at 0 for the root. Since a frozen tree does not change, nodes are
+	 * numbered when they are created.
+	 *
+	 * @return an ordinal
+	 */
+	int getOrdinal() {
+		return ordinal;
+	}
+
+
+	/**
+	 * Returns the children of this node as an array, which must not be modified.
+	 *
+	 * @return an array of nodes, empty for a leaf
+	 */
+	Node[] getChildArray() {
+		return array;
+	}
+
+
+	/**
+	 * Returns the object attached to the document of this node under the specified
+	 * key. Attachments are used to keep indexes with a frozen document, for as
+	 * long as the document exists.
+	 *
+	 * @param key a key, not null
+	 * @return an object, or null if none is attached
+	 */
+	public Object getAttachment(Object key) {
+		return getDocument().getAttachment(key);
+	}
+
+
+	/**
+	 * Attaches an object to the document of this node under the specified key,
+	 * unless one is attached already, in which case that one is returned.
+	 *
+	 * @param key   a key, not null
+	 * @param value an object, not null
+	 * @return the attached object
+	 */
+	public Object attach(Object key, Object value) {
+		return getDocument().attach(key, value);
+	}
+
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T extends Node> List<T> nodes() {
+		return children != null ? (List<T>) children : super.nodes(); // null during construction
+	}
+
+
+	private void modify() {
+		if (frozen) throw new UnsupportedOperationException("cannot modify a frozen node");
+	}
+
+
+	/**
+	 * This method throws an {@code UnsupportedOperationException}.
+	 */
+	@Override
+	public void setName(String name) {
+		modify(); super.setName(name);
+	}
+
+
+	/**
+	 * This method throws an {@code UnsupportedOperationException}.
+	 */
+	@Override
+	public void setValue(String value) {
+		modify(); super.setValue(value);
+	}
+
+
+	/**
+	 * This method throws an {@code UnsupportedOperationException}.
+	 */
+	@Override
+	public boolean add(Node node) {
+		modify(); return super.add(node);
+	}
+
+
+	/**
+	 * This method throws an {@code UnsupportedOperationException}.
+	 */
+	@Override
+	public boolean remove(Node node) {
+		modify(); return super.remove(node);
+	}
+
+
+	/**
+	 * Returns a (mutable) deep copy of this node.
+	 */
+	@Override
+	public DataNode copy() {
+		DataNode copy = new DataNode(getName(), getValue());
+		if (isParent()) {
+			copy.add(null);
+			for (Node node : children)
+				copy.add(((DataNode) node).copy());
+		}
+		return copy;
+	}
+
+}
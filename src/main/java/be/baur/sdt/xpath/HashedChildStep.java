@@ -0,0 +1,200 @@
+package be.baur.sdt.xpath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
+import org.jaxen.JaxenException;
+import org.jaxen.Navigator;
+import org.jaxen.expr.DefaultNameStep;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.iter.IterableAxis;
+import org.jaxen.function.StringFunction;
+
+import be.baur.sda.Node;
+
+/**
+ * A {@code HashedChildStep} is a child step with a name test, of which the
+ * first predicate compares the string value of the child, or of a child of the
+ * child, with a literal or a variable, as in <code>item[code='X']</code> or
+ * <code>entry[.=$k]</code>. For a frozen parent with many children, the step
+ * is answered from a hash index of the children by value, that is built on
+ * first use. For other parents, it is evaluated like any other name step.
+ * <p>
+ * An index is attached to the document of the parent, under the identity of
+ * the parent and the name and key of the step. So it is retained as long as
+ * the document, nodes carry no reference to it, and a parent has at most one
+ * index for each distinct step that is evaluated on it, each of which is no
+ * larger than the list of its children. Lookups take no lock.
+ *
+ * @see PathOptimizer
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+final class HashedChildStep extends DefaultNameStep {
+
+	private static final long serialVersionUID = 7911608440167405247L;
+	private static final int MIN_CHILDREN = 8; // parents with fewer children are searched
+
+	private final String name; // the name of the children
+	private final String key; // the name of the child that holds the value, or null for the child itself
+	private final Expr value; // the literal or variable to compare with
+	private final IndexedNameStep.Predicates rest; // the predicates after the first one
+	private final String indexKey; // the key of the indexes attached for frozen parents
+
+
+	/**
+	 * Creates a hashed child step.
+	 *
+	 * @param axis       a child axis
+	 * @param name       a node name, not a wildcard
+	 * @param key        the name of the child that holds the value, or null to
+	 *                   compare the string value of the child itself
+	 * @param value      a literal or variable reference expression
+	 * @param predicates the predicates of the step, the first being the equality
+	 */
+	HashedChildStep(IterableAxis axis, String name, String key, Expr value, List predicates) {
+		this(axis, name, key, value, new IndexedNameStep.Predicates());
+		for (Object predicate : predicates)
+			addPredicate((Predicate) predicate);
+		for (Object predicate : predicates.subList(1, predicates.size()))
+			rest.addPredicate((Predicate) predicate);
+	}
+
+
+	private HashedChildStep(IterableAxis axis, String name, String key, Expr value, IndexedNameStep.Predicates all) {
+		super(axis, "", name, all);
+		this.name = name; this.key = key; this.value = value;
+		this.rest = new IndexedNameStep.Predicates();
+		this.indexKey = name + "/" + (key == null ? "." : key);
+	}
+
+
+	@Override
+	public List evaluate(Context context) throws JaxenException {
+
+		final List contextNodes = context.getNodeSet();
+		for (Object contextNode : contextNodes)
+			if (! (contextNode instanceof FrozenNode)
+					|| ((FrozenNode) contextNode).getChildArray().length < MIN_CHILDREN)
+				return super.evaluate(context);
+
+		List<String> values = values(context);
+		if (values == null) return super.evaluate(context);
+
+		final ContextSupport support = context.getContextSupport();
+		List result = new ArrayList();
+		for (Object contextNode : contextNodes) {
+			List<Node> nodes = select(index((FrozenNode) contextNode), values);
+			if (! nodes.isEmpty())
+				result.addAll(rest.filter(nodes, support));
+		}
+		return result.isEmpty() ? Collections.emptyList() : result;
+	}
+
+
+	/*
+	 * Returns the string values to look up, or null if the value is a number or a
+	 * boolean, which are not compared as strings.
+	 */
+	private List<String> values(Context context) throws JaxenException {
+
+		Object result = value.evaluate(context);
+		if (result instanceof Number || result instanceof Boolean) return null;
+
+		Navigator nav = context.getNavigator();
+		if (! (result instanceof List))
+			return Collections.singletonList(StringFunction.evaluate(result, nav));
+
+		List<String> values = new ArrayList<String>(((List) result).size());
+		for (Object item : (List) result)
+			values.add(StringFunction.evaluate(item, nav));
+		return values;
+	}
+
+
+	/*
+	 * Returns the children with one of the specified values, in document order.
+	 */
+	private static List<Node> select(Map<String, List<Node>> index, List<String> values) {
+
+		if (values.size() == 1) {
+			List<Node> nodes = index.get(values.get(0));
+			return nodes == null ? Collections.emptyList() : nodes;
+		}
+
+		Map<Node, Node> unique = new IdentityHashMap<Node, Node>();
+		List<Node> result = new ArrayList<Node>();
+		for (String value : values)
+			for (Node node : index.getOrDefault(value, Collections.emptyList()))
+				if (unique.put(node, node) == null) result.add(node);
+		result.sort((n1, n2) -> ((FrozenNode) n1).getPosition() - ((FrozenNode) n2).getPosition());
+		return result;
+	}
+
+
+	/*
+	 * Returns the index of the children of a frozen parent, building it if needed.
+	 */
+	private Map<String, List<Node>> index(FrozenNode parent) {
+
+		IndexKey attachment = new IndexKey(parent, indexKey);
+		Map<String, List<Node>> index = (Map<String, List<Node>>) parent.getAttachment(attachment);
+		if (index != null) return index;
+
+		index = new HashMap<String, List<Node>>();
+		for (Node child : parent.getChildArray()) {
+			if (! child.getName().equals(name)) continue;
+			if (key == null)
+				add(index, stringValue(child), child);
+			else for (Node grandchild : ((FrozenNode) child).getChildArray())
+				if (grandchild.getName().equals(key)) add(index, stringValue(grandchild), child);
+		}
+		return (Map<String, List<Node>>) parent.attach(attachment, index);
+	}
+
+
+	/*
+	 * The key under which the index of a parent is attached to its document; it
+	 * compares parents by identity, since equal nodes may have different children.
+	 */
+	private static final class IndexKey {
+
+		private final Node parent;
+		private final String key;
+
+		IndexKey(Node parent, String key) {
+			this.parent = parent; this.key = key;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (! (obj instanceof IndexKey)) return false;
+			IndexKey other = (IndexKey) obj;
+			return parent == other.parent && key.equals(other.key);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(parent) + key.hashCode();
+		}
+	}
+
+
+	private static void add(Map<String, List<Node>> index, String value, Node node) {
+		List<Node> nodes = index.computeIfAbsent(value, k -> new ArrayList<Node>(1));
+		if (nodes.isEmpty() || nodes.get(nodes.size() - 1) != node) nodes.add(node);
+	}
+
+
+	private static String stringValue(Node node) {
+		String value = DocumentNavigator.getInstance().getElementStringValue(node);
+		return value == null ? "" : value;
+	}
+
+}
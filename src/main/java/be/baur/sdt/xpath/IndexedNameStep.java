@@ -0,0 +1,110 @@
+package be.baur.sdt.xpath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
+import org.jaxen.JaxenException;
+import org.jaxen.expr.DefaultNameStep;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.PredicateSet;
+import org.jaxen.expr.iter.IterableAxis;
+import org.jaxen.saxpath.Axis;
+
+import be.baur.sda.Node;
+
+/**
+ * An {@code IndexedNameStep} is a descendant (or descendant-or-self) step with
+ * a name test, that is answered from the name index of a frozen document, see
+ * {@link NameIndex}. For nodes in other documents, it is evaluated like any
+ * other name step.
+ *
+ * @see PathOptimizer
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+final class IndexedNameStep extends DefaultNameStep {
+
+	private static final long serialVersionUID = -3172270941533417958L;
+	private final String name;
+	private final Predicates predicates;
+
+
+	/**
+	 * Creates an indexed step with the specified axis, name and predicates.
+	 *
+	 * @param axis       a descendant or descendant-or-self axis
+	 * @param name       a node name, not a wildcard
+	 * @param predicates the predicates of the step, may be empty
+	 */
+	IndexedNameStep(IterableAxis axis, String name, List predicates) {
+		this(axis, name, new Predicates());
+		for (Object predicate : predicates)
+			addPredicate((Predicate) predicate);
+	}
+
+
+	private IndexedNameStep(IterableAxis axis, String name, Predicates predicates) {
+		super(axis, "", name, predicates);
+		this.name = name; this.predicates = predicates;
+	}
+
+
+	@Override
+	public List evaluate(Context context) throws JaxenException {
+
+		final List contextNodes = context.getNodeSet();
+		final ContextSupport support = context.getContextSupport();
+
+		if (contextNodes.size() == 1) {
+			List<Node> nodes = descendants(contextNodes.get(0));
+			if (nodes == null) return super.evaluate(context);
+			return nodes.isEmpty() ? nodes : predicates.filter(nodes, support);
+		}
+
+		List result = new ArrayList();
+		Map<Object, Object> unique = new IdentityHashMap<Object, Object>();
+		for (Object contextNode : contextNodes) {
+			List<Node> nodes = descendants(contextNode);
+			if (nodes == null) return super.evaluate(context);
+			if (nodes.isEmpty()) continue;
+			for (Object node : predicates.filter(nodes, support))
+				if (unique.put(node, node) == null) result.add(node);
+		}
+		return result.isEmpty() ? Collections.emptyList() : result;
+	}
+
+
+	/*
+	 * Returns the nodes selected from the index for a context node, before the
+	 * predicates are applied, or null if the context node is not indexed.
+	 */
+	private List<Node> descendants(Object contextNode) {
+
+		if (! (contextNode instanceof Node)) return null;
+		Node root = ((Node) contextNode).root();
+		if (! (root instanceof DocumentNode)) return null;
+
+		NameIndex index = ((DocumentNode) root).getNameIndex();
+		if (index == null) return null;
+		return index.descendants((Node) contextNode, name, getAxis() == Axis.DESCENDANT_OR_SELF);
+	}
+
+
+	/*
+	 * A predicate set that exposes the evaluation of its predicates to the steps
+	 * in this package.
+	 */
+	static final class Predicates extends PredicateSet {
+
+		private static final long serialVersionUID = 4521508863017224316L;
+
+		List filter(List nodes, ContextSupport support) throws JaxenException {
+			return evaluatePredicates(nodes, support);
+		}
+	}
+
+}
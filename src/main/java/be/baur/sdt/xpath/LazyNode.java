@@ -0,0 +1,226 @@
+package be.baur.sdt.xpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Predicate;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.Node;
+import be.baur.sda.SDA;
+
+/**
+ * A {@code LazyNode} is a data node whose child nodes are parsed when they are
+ * first accessed, rather than when the document is loaded. This allows a
+ * transform to navigate a large input document while only the parts it
+ * actually uses are materialized; time and memory scale with those rather than
+ * with the size of the document.
+ * <p>
+ * A lazy document is created by {@link #parse(File)}, which memory-maps the
+ * file and verifies its structure in a fast pass that does not create any
+ * nodes. When the children of a node are requested, its compound statement is
+ * skimmed to create the child nodes, recording the location of their compound
+ * statements for later. Node names are checked as they are materialized; an
+ * invalid name found at that time causes an {@code UncheckedIOException}.
+ * <p>
+ * Lazy documents are limited to 2 GB and UTF-8 encoding. Materialized nodes
+ * remain in memory as long as the document is in use.
+ *
+ * @see be.baur.sdt.transform.TransformInput#lazy(File)
+ */
+public final class LazyNode extends DataNode {
+
+	private final MappedDocument source; // the content of the document, shared by all its nodes
+	private final int start; // offset of the compound content, or -1 if this is a leaf
+	private final int end; // offset of the closing brace of the compound
+	private volatile boolean loaded; // whether the children have been materialized
+	private boolean loading; // whether the children are being materialized
+
+
+	private LazyNode(String name, String value, MappedDocument source, int start, int end) {
+		super(name, value);
+		this.source = source; this.start = start; this.end = end;
+		this.loaded = (start < 0);
+	}
+
+
+	/**
+	 * Returns the root node of the SDA document in the specified file. The file is
+	 * memory-mapped, and its content is parsed on demand.
+	 *
+	 * @param file a file with UTF-8 encoded SDA content, not null
+	 * @return a root node
+	 * @throws IOException if an I/O operation failed or the content is malformed
+	 */
+	public static DataNode parse(File file) throws IOException {
+
+		MappedDocument source = MappedDocument.map(file);
+		try {
+			verify(source);
+			int i = source.skipWhitespace(0);
+			return node(source, i, source.nameEnd(i));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+
+	/*
+	 * Verifies that the content consists of exactly one properly nested node, with
+	 * terminated values, without creating any nodes.
+	 */
+	private static void verify(MappedDocument source) throws IOException {
+
+		final int length = source.length;
+		int i = 0, depth = 0; boolean root = false;
+
+		while ((i = source.skipWhitespace(i)) < length) {
+
+			if (source.get(i) == '}') {
+				if (depth == 0) throw MappedDocument.error("unexpected '}'", i);
+				--depth; ++i; continue;
+			}
+			if (depth == 0 && root)
+				throw MappedDocument.error("excess input", i);
+
+			int name = i;
+			if ((i = source.nameEnd(i)) == name)
+				throw MappedDocument.error("node name expected", i);
+			root = true;
+
+			boolean value = false;
+			if ((i = source.skipWhitespace(i)) < length && source.get(i) == '"') {
+				i = source.skipString(i + 1); value = true;
+				i = source.skipWhitespace(i);
+			}
+			if (i < length && source.get(i) == '{') {
+				++depth; ++i;
+			} else if (! value)
+				throw MappedDocument.error("value or '{' expected", i);
+		}
+
+		if (! root) throw MappedDocument.error("root node expected", i);
+		if (depth > 0) throw MappedDocument.error("'}' expected", i);
+	}
+
+
+	/*
+	 * Creates a (lazy) node for the node of which the name starts at offset i and
+	 * ends at offset j. The location of its compound statement is recorded, but
+	 * its children are not created.
+	 */
+	private static LazyNode node(MappedDocument source, int i, int j) {
+
+		String name = source.decode(i, j, false);
+		if (! SDA.isName(name))
+			throw new UncheckedIOException(MappedDocument.error("invalid node name '" + name + "'", i));
+
+		String value = null;
+		if ((i = source.skipWhitespace(j)) < source.length && source.get(i) == '"') {
+			j = source.skipString(i + 1);
+			value = source.decode(i + 1, j - 1, true);
+			i = source.skipWhitespace(j);
+		}
+
+		if (i == source.length || source.get(i) != '{')
+			return new LazyNode(name, value, source, -1, -1);
+		return new LazyNode(name, value, source, i + 1, source.skipCompound(i + 1));
+	}
+
+
+	/*
+	 * Creates the children of this node, if that has not been done already.
+	 */
+	private void load() {
+
+		if (loaded) return;
+		synchronized (this) {
+			if (loaded || loading) return;
+			loading = true;
+			super.add(null); // a parent, even if the compound is empty
+
+			int i = start;
+			while ((i = source.skipWhitespace(i)) < end) {
+				LazyNode child = node(source, i, source.nameEnd(i));
+				super.add(child);
+				i = (child.start < 0) ? source.skipNode(i) : child.end + 1;
+			}
+			loaded = true; loading = false;
+		}
+	}
+
+
+	/*
+	 * Creates all descendants of this node.
+	 */
+	private void loadAll() {
+		load();
+		for (Node node : super.nodes())
+			((LazyNode) node).loadAll();
+	}
+
+
+	@Override
+	public boolean isParent() {
+		return start >= 0 || super.isParent();
+	}
+
+
+	@Override
+	public boolean isLeaf() {
+		return ! isParent();
+	}
+
+
+	@Override
+	public <T extends Node> List<T> nodes() {
+		load(); return super.nodes();
+	}
+
+
+	@Override
+	public boolean add(Node node) {
+		load(); return super.add(node);
+	}
+
+
+	@Override
+	public boolean remove(Node node) {
+		load(); return super.remove(node);
+	}
+
+
+	@Override
+	public <T extends Node> List<T> find(Predicate<? super T> predicate) {
+		loadAll(); return super.find(predicate);
+	}
+
+
+	@Override
+	public <T extends Node> List<T> getAll(Predicate<? super T> predicate) {
+		load(); return super.getAll(predicate);
+	}
+
+
+	/**
+	 * Returns a (materialized) deep copy of this node.
+	 */
+	@Override
+	public DataNode copy() {
+		DataNode copy = new DataNode(getName(), getValue());
+		if (isParent()) {
+			copy.add(null);
+			for (Node node : nodes())
+				copy.add(((DataNode) node).copy());
+		}
+		return copy;
+	}
+
+
+	@Override
+	public String toString() {
+		loadAll(); return super.toString();
+	}
+
+}
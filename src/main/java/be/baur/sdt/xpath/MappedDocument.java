@@ -0,0 +1,179 @@
+package be.baur.sdt.xpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@code MappedDocument} provides byte-level access to the content of a
+ * memory-mapped SDA file. It is used to skim the structure of a document
+ * without parsing it, which is possible because all SDA delimiters are ASCII
+ * characters, and these never occur within a multi-byte UTF-8 sequence.
+ * <p>
+ * All access is absolute, so that a document may be skimmed by several threads
+ * at the same time. A mapped document is limited to 2 GB, the size of a single
+ * mapped buffer, but it may be a region of a larger file. Malformed content
+ * that is found while skimming causes an {@code UncheckedIOException}.
+ */
+final class MappedDocument {
+
+	private final ByteBuffer buffer;
+	final int length; // the size of the document in bytes
+	final long base; // the file offset of the mapped content, used in error messages
+
+
+	private MappedDocument(ByteBuffer buffer, long base) {
+		this.buffer = buffer; this.length = buffer.limit(); this.base = base;
+	}
+
+
+	/**
+	 * Maps the content of the specified file.
+	 *
+	 * @param file a file with UTF-8 encoded SDA content, not null
+	 * @return a mapped document
+	 * @throws IOException if the file could not be mapped or is too large
+	 */
+	static MappedDocument map(File file) throws IOException {
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("file exceeds the maximum size of a mapped document");
+			return map(channel, 0, size);
+		}
+	}
+
+
+	/**
+	 * Maps a region of a file, so that part of a file of any size can be skimmed.
+	 * Offsets are relative to the start of the region.
+	 *
+	 * @param channel  an open file channel, not null
+	 * @param position the file offset of the region
+	 * @param size     the size of the region, at most 2 GB
+	 * @return a mapped document
+	 * @throws IOException if the region could not be mapped
+	 */
+	static MappedDocument map(FileChannel channel, long position, long size) throws IOException {
+		return new MappedDocument(channel.map(FileChannel.MapMode.READ_ONLY, position, size), position);
+	}
+
+
+	/**
+	 * Returns the byte at the specified offset.
+	 */
+	byte get(int i) {
+		return buffer.get(i);
+	}
+
+
+	/**
+	 * Returns the offset of the first non-white space character at or after
+	 * offset i, or the length of the document.
+	 */
+	int skipWhitespace(int i) {
+		while (i < length) {
+			byte b = buffer.get(i);
+			if (b != ' ' && b != '\t' && b != '\n' && b != '\r' && b != '\f')
+				break;
+			++i;
+		}
+		return i;
+	}
+
+
+	/**
+	 * Returns the offset after the node name that starts at offset i.
+	 */
+	int nameEnd(int i) {
+		while (i < length) {
+			byte b = buffer.get(i);
+			if (b == '"' || b == '{' || b == '}' || b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f')
+				break;
+			++i;
+		}
+		return i;
+	}
+
+
+	/**
+	 * Returns the offset after the closing quote of a value, of which the content
+	 * starts at offset i.
+	 */
+	int skipString(int i) {
+		while (i < length) {
+			byte b = buffer.get(i++);
+			if (b == '"') return i;
+			if (b == '\\') ++i;
+		}
+		throw new UncheckedIOException(error("unterminated value", base + length));
+	}
+
+
+	/**
+	 * Returns the offset of the closing brace of a compound statement, of which
+	 * the content starts at offset i.
+	 */
+	int skipCompound(int i) {
+		int depth = 1;
+		while (i < length) {
+			switch (buffer.get(i++)) {
+				case '"': i = skipString(i); break;
+				case '{': ++depth; break;
+				case '}': if (--depth == 0) return i - 1;
+			}
+		}
+		throw new UncheckedIOException(error("'}' expected", base + length));
+	}
+
+
+	/**
+	 * Returns the offset after the node that starts at offset i, and its value and
+	 * compound statement, if any.
+	 */
+	int skipNode(int i) {
+		i = skipWhitespace(nameEnd(i));
+		if (i < length && buffer.get(i) == '"')
+			i = skipWhitespace(skipString(i + 1));
+		if (i < length && buffer.get(i) == '{')
+			i = skipCompound(i + 1) + 1;
+		return i;
+	}
+
+
+	/**
+	 * Decodes the content from offset i up to offset j, removing escapes if
+	 * requested.
+	 */
+	String decode(int i, int j, boolean unescape) {
+
+		byte[] bytes = new byte[j - i];
+		ByteBuffer slice = buffer.duplicate(); // absolute access, for thread-safety
+		slice.position(i); slice.get(bytes);
+		String s = new String(bytes, StandardCharsets.UTF_8);
+
+		if (! unescape || s.indexOf('\\') < 0) return s;
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int k = 0; k < s.length(); k++) {
+			char c = s.charAt(k);
+			if (c == '\\' && k + 1 < s.length()) c = s.charAt(++k);
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Returns an exception for malformed content at the specified offset.
+	 */
+	static IOException error(String message, long position) {
+		return new IOException(message + " at position " + position);
+	}
+
+}
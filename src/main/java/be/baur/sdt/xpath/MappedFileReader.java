@@ -0,0 +1,153 @@
+package be.baur.sdt.xpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A {@code Reader} that decodes characters directly from a memory-mapped file.
+ * Compared to a {@code FileReader}, this avoids copying the file content
+ * through the intermediate byte buffers of the input stream and decoder, which
+ * is noticeable for files of several hundreds of megabytes. The file is mapped
+ * in regions of at most {@link #REGION_SIZE} bytes, so files larger than 2 GB
+ * are supported as well.
+ * <p>
+ * Malformed input is reported rather than replaced. Note that a mapped region
+ * is released by the garbage collector rather than when this reader is closed;
+ * the file may therefore remain open for a while after closing on some
+ * platforms.
+ *
+ * @see DocumentNavigator#getDocument(String)
+ */
+public final class MappedFileReader extends Reader {
+
+	/** The maximum number of bytes mapped at a time. */
+	public static final int REGION_SIZE = 1 << 28; // 256 MB
+
+	private final FileChannel channel;
+	private final long size; // the size of the file
+	private final CharsetDecoder decoder;
+
+	private MappedByteBuffer region; // the region being decoded
+	private long offset; // file offset of the region
+	private boolean last; // whether the region extends to the end of the file
+	private boolean flushed; // whether the decoder has been flushed
+	private int pending = -1; // the low surrogate of a pair split over two reads
+
+
+	/**
+	 * Creates a reader that decodes UTF-8 characters from the specified file.
+	 *
+	 * @param file the file to read, not null
+	 * @throws IOException if the file could not be opened or mapped
+	 */
+	public MappedFileReader(File file) throws IOException {
+		this(file, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Creates a reader that decodes characters from the specified file using the
+	 * specified character set.
+	 *
+	 * @param file    the file to read, not null
+	 * @param charset the character set of the file, not null
+	 * @throws IOException if the file could not be opened or mapped
+	 */
+	@SuppressWarnings("resource") // the channel closes the file
+	public MappedFileReader(File file, Charset charset) throws IOException {
+
+		Objects.requireNonNull(file, "file must not be null");
+		this.decoder = Objects.requireNonNull(charset, "charset must not be null").newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+
+		this.channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			this.size = channel.size();
+			map(0);
+		} catch (IOException e) {
+			channel.close(); throw e;
+		}
+	}
+
+
+	/*
+	 * Maps the region that starts at the specified file offset.
+	 */
+	private void map(long position) throws IOException {
+		long length = Math.min(size - position, REGION_SIZE);
+		region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		offset = position; last = (position + length == size);
+	}
+
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+
+		if (off < 0 || len < 0 || len > cbuf.length - off)
+			throw new IndexOutOfBoundsException();
+		if (region == null)
+			throw new IOException("reader is closed");
+		if (len == 0) return 0;
+
+		CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+		if (pending >= 0) {
+			out.put((char) pending); pending = -1;
+		}
+
+		while (out.hasRemaining() && ! flushed) {
+
+			if (out.remaining() == 1) { // a surrogate pair may not fit
+				CharBuffer pair = CharBuffer.allocate(2);
+				decode(pair); pair.flip();
+				if (pair.hasRemaining()) out.put(pair.get());
+				if (pair.hasRemaining()) pending = pair.get();
+				if (out.hasRemaining() && ! flushed) continue;
+				break;
+			}
+			decode(out);
+		}
+
+		int count = out.position() - off;
+		return (count == 0 && flushed) ? -1 : count;
+	}
+
+
+	/*
+	 * Decodes characters into the output buffer until it is full, the end of the
+	 * current region is reached, or the end of the file was reached and the
+	 * decoder is flushed.
+	 */
+	private void decode(CharBuffer out) throws IOException {
+
+		CoderResult result = decoder.decode(region, out, last);
+		if (result.isError())
+			result.throwException();
+		if (result.isOverflow())
+			return;
+
+		if (! last) { // continue at the first byte not decoded, which may be part of a character
+			map(offset + region.position()); return;
+		}
+		if (decoder.flush(out).isUnderflow())
+			flushed = true;
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		region = null; channel.close();
+	}
+
+}
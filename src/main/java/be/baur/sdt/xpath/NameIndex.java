@@ -0,0 +1,123 @@
+package be.baur.sdt.xpath;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import be.baur.sda.Node;
+
+/**
+ * A {@code NameIndex} maps the node names in a document to the nodes with that
+ * name, in document order. It allows descendant steps with a name test to be
+ * answered without walking the tree: every frozen node is numbered in document
+ * order, see {@link FrozenNode#getOrdinal()}, so the descendants of a node are
+ * those numbered after it, up to the end of its subtree, and they are found in
+ * the list for a name by binary search.
+ * <p>
+ * An index is only valid as long as the document does not change, so it is
+ * only built for frozen documents, see {@link DocumentNode#getNameIndex()}.
+ */
+final class NameIndex {
+
+	private final Node[] nodes; // all nodes except the document node, by ordinal
+	private final int[] ends; // the ordinal after the last descendant of each node
+	private final Map<String, int[]> names = new HashMap<String, int[]>(); // the ordinals of the nodes with a name
+
+
+	/**
+	 * Creates an index for the specified frozen document.
+	 *
+	 * @param document a document node with a frozen root, not null
+	 */
+	NameIndex(DocumentNode document) {
+
+		/*
+		 * Collect the nodes in document order, using a stack rather than recursion,
+		 * so that each is found at its ordinal.
+		 */
+		List<Node> list = new ArrayList<Node>();
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(document.nodes().get(0));
+
+		while (! stack.isEmpty()) {
+			Node node = stack.pop();
+			list.add(node);
+			Node[] children = ((FrozenNode) node).getChildArray();
+			for (int i = children.length - 1; i >= 0; i--)
+				stack.push(children[i]);
+		}
+
+		final int size = list.size();
+		nodes = list.toArray(new Node[size]);
+
+		ends = new int[size]; // the end of a node is that of its last child, if any
+		for (int i = size - 1; i >= 0; i--) {
+			Node[] children = ((FrozenNode) nodes[i]).getChildArray();
+			ends[i] = children.length == 0 ? i + 1 : ends[((FrozenNode) children[children.length - 1]).getOrdinal()];
+		}
+
+		Map<String, int[]> counts = new HashMap<String, int[]>();
+		for (Node node : nodes) {
+			int[] count = counts.get(node.getName());
+			if (count == null) counts.put(node.getName(), count = new int[1]);
+			++count[0];
+		}
+		for (Map.Entry<String, int[]> e : counts.entrySet()) {
+			names.put(e.getKey(), new int[e.getValue()[0]]);
+			e.getValue()[0] = 0; // reused to fill the lists below
+		}
+		for (int i = 0; i < size; i++) {
+			String name = nodes[i].getName();
+			names.get(name)[counts.get(name)[0]++] = i;
+		}
+	}
+
+
+	/**
+	 * Returns the descendants of a node that have the specified name, in document
+	 * order, including the node itself if requested.
+	 *
+	 * @param context a node in the indexed document, or the document node
+	 * @param name    a node name
+	 * @param self    whether to include the context node
+	 * @return a list of nodes, or null if the node is not in this index
+	 */
+	List<Node> descendants(Node context, String name, boolean self) {
+
+		int from = 0, to = nodes.length;
+		if (! (context instanceof DocumentNode)) {
+			if (! (context instanceof FrozenNode)) return null;
+			int number = ((FrozenNode) context).getOrdinal();
+			if (number >= nodes.length || nodes[number] != context) return null;
+			from = self ? number : number + 1; to = ends[number];
+		}
+
+		int[] numbered = names.get(name);
+		if (numbered == null) return Collections.emptyList();
+		int lo = search(numbered, from), hi = search(numbered, to);
+
+		List<Node> result = new ArrayList<Node>(hi - lo);
+		for (int i = lo; i < hi; i++)
+			result.add(nodes[numbered[i]]);
+		return result;
+	}
+
+
+	/*
+	 * Returns the position of the first number in a sorted array that is not less
+	 * than the specified number, or the length of the array.
+	 */
+	private static int search(int[] numbers, int number) {
+		int lo = 0, hi = numbers.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (numbers[mid] < number) lo = mid + 1; else hi = mid;
+		}
+		return lo;
+	}
+
+}
@@ -0,0 +1,112 @@
+package be.baur.sdt.xpath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
+import org.jaxen.JaxenException;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.Step;
+import org.jaxen.saxpath.Axis;
+
+/**
+ * An {@code OrderedLocationPath} evaluates the steps of a location path like
+ * Jaxen does, but sorts the selected nodes into document order by their keys,
+ * see {@link DocumentOrder}.
+ *
+ * @see PathOptimizer
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+final class OrderedLocationPath implements LocationPath {
+
+	private static final long serialVersionUID = 6052316817944213875L;
+	private final LocationPath path;
+
+
+	/**
+	 * Creates an ordered location path with the steps of another one.
+	 *
+	 * @param path a location path, not null
+	 */
+	OrderedLocationPath(LocationPath path) {
+		this.path = path;
+	}
+
+
+	@Override
+	public Object evaluate(Context context) throws JaxenException {
+
+		List contextNodes = context.getNodeSet();
+		final ContextSupport support = context.getContextSupport();
+
+		if (path.isAbsolute()) {
+			if (contextNodes.isEmpty()) return Collections.emptyList();
+			Object document = support.getNavigator().getDocumentNode(contextNodes.get(0));
+			if (document == null) return Collections.emptyList();
+			contextNodes = Collections.singletonList(document);
+		}
+
+		final List steps = path.getSteps();
+		List nodes = new ArrayList(contextNodes);
+		Context stepContext = new Context(support);
+		for (Object step : steps) {
+			stepContext.setNodeSet(nodes);
+			nodes = ((Step) step).evaluate(stepContext);
+			if (isReverse(((Step) step).getAxis()))
+				Collections.reverse(nodes);
+		}
+
+		if (steps.size() > 1 || contextNodes.size() > 1)
+			DocumentOrder.sort(nodes);
+		return nodes;
+	}
+
+
+	/*
+	 * Returns true if an axis selects nodes in reverse document order.
+	 */
+	private static boolean isReverse(int axis) {
+		return axis == Axis.ANCESTOR || axis == Axis.ANCESTOR_OR_SELF
+			|| axis == Axis.PRECEDING || axis == Axis.PRECEDING_SIBLING;
+	}
+
+
+	@Override
+	public void addStep(Step step) {
+		path.addStep(step);
+	}
+
+
+	@Override
+	public List getSteps() {
+		return path.getSteps();
+	}
+
+
+	@Override
+	public boolean isAbsolute() {
+		return path.isAbsolute();
+	}
+
+
+	@Override
+	public String getText() {
+		return path.getText();
+	}
+
+
+	@Override
+	public Expr simplify() {
+		return this;
+	}
+
+
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+
+}
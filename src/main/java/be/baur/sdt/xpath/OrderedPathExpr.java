@@ -0,0 +1,95 @@
+package be.baur.sdt.xpath;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jaxen.Context;
+import org.jaxen.JaxenException;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.PathExpr;
+
+/**
+ * An {@code OrderedPathExpr} evaluates a path expression like Jaxen does, that
+ * is a filter expression followed by a location path, such as
+ * <code>$nodes/name</code>, but with an ordered location path, see
+ * {@link OrderedLocationPath}.
+ *
+ * @see PathOptimizer
+ */
+final class OrderedPathExpr implements PathExpr {
+
+	private static final long serialVersionUID = 2836047161903370251L;
+	private final PathExpr path;
+	private final OrderedLocationPath locationPath;
+
+
+	/**
+	 * Creates an ordered path expression from another one.
+	 *
+	 * @param path a path expression with a location path, not null
+	 */
+	OrderedPathExpr(PathExpr path) {
+		this.path = path;
+		this.locationPath = new OrderedLocationPath(path.getLocationPath());
+	}
+
+
+	@Override
+	public Object evaluate(Context context) throws JaxenException {
+
+		Expr filterExpr = path.getFilterExpr();
+		if (filterExpr == null)
+			return locationPath.evaluate(context);
+
+		Object result = filterExpr.evaluate(context);
+		List<Object> nodes;
+		if (result instanceof List) {
+			@SuppressWarnings("unchecked") List<Object> list = (List<Object>) result;
+			nodes = list;
+		}
+		else {
+			nodes = new ArrayList<Object>(1); nodes.add(result);
+		}
+		Context pathContext = new Context(context.getContextSupport());
+		pathContext.setNodeSet(nodes);
+		return locationPath.evaluate(pathContext);
+	}
+
+
+	@Override
+	public Expr getFilterExpr() {
+		return path.getFilterExpr();
+	}
+
+
+	@Override
+	public void setFilterExpr(Expr filterExpr) {
+		path.setFilterExpr(filterExpr);
+	}
+
+
+	@Override
+	public LocationPath getLocationPath() {
+		return locationPath;
+	}
+
+
+	@Override
+	public String getText() {
+		return path.getText();
+	}
+
+
+	@Override
+	public Expr simplify() {
+		return this;
+	}
+
+
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+
+}
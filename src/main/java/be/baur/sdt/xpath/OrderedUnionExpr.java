@@ -0,0 +1,92 @@
+package be.baur.sdt.xpath;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jaxen.Context;
+import org.jaxen.JaxenException;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.UnionExpr;
+
+/**
+ * An {@code OrderedUnionExpr} evaluates a union like Jaxen does, but removes
+ * duplicates by identity and sorts the nodes into document order by their
+ * keys, see {@link DocumentOrder}.
+ *
+ * @see PathOptimizer
+ */
+final class OrderedUnionExpr implements UnionExpr {
+
+	private static final long serialVersionUID = -4405380717553095164L;
+	private final Expr lhs, rhs;
+
+
+	/**
+	 * Creates an ordered union of two expressions.
+	 *
+	 * @param lhs the left-hand expression, not null
+	 * @param rhs the right-hand expression, not null
+	 */
+	OrderedUnionExpr(Expr lhs, Expr rhs) {
+		this.lhs = lhs; this.rhs = rhs;
+	}
+
+
+	@Override
+	public Object evaluate(Context context) throws JaxenException {
+
+		Object left = lhs.evaluate(context), right = rhs.evaluate(context);
+		if (! (left instanceof List && right instanceof List))
+			throw new JaxenException("Unions are only allowed over node-sets");
+
+		List<?> leftNodes = (List<?>) left, rightNodes = (List<?>) right;
+		List<Object> result = new ArrayList<Object>(leftNodes.size() + rightNodes.size());
+		Map<Object, Object> unique = new IdentityHashMap<Object, Object>();
+		for (Object node : leftNodes)
+			if (unique.put(node, node) == null) result.add(node);
+		for (Object node : rightNodes)
+			if (unique.put(node, node) == null) result.add(node);
+
+		DocumentOrder.sort(result);
+		return result;
+	}
+
+
+	@Override
+	public String getOperator() {
+		return "|";
+	}
+
+
+	@Override
+	public Expr getLHS() {
+		return lhs;
+	}
+
+
+	@Override
+	public Expr getRHS() {
+		return rhs;
+	}
+
+
+	@Override
+	public String getText() {
+		return "(" + lhs.getText() + " | " + rhs.getText() + ")";
+	}
+
+
+	@Override
+	public Expr simplify() {
+		return this;
+	}
+
+
+	@Override
+	public String toString() {
+		return "[(OrderedUnionExpr): " + lhs + ", " + rhs + "]";
+	}
+
+}
@@ -0,0 +1,240 @@
+package be.baur.sdt.xpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.SDA;
+import be.baur.sda.io.ParseException;
+
+/**
+ * A {@code ParallelParser} parses large SDA documents using multiple threads.
+ * The file is memory-mapped and skimmed to find the boundaries of the direct
+ * children of the root node, which are then parsed concurrently on a fork-join
+ * pool, in chunks of about {@link #CHUNK_SIZE} bytes. Like in a
+ * {@link MappedFileReader}, the file is mapped in regions, and each chunk is
+ * mapped as a region of its own, so files of any size can be parsed, provided
+ * that no single child of the root node exceeds 2 GB. The resulting tree is
+ * assembled in document order, and is the same as that of a sequential parse.
+ * <p>
+ * Files smaller than {@link #THRESHOLD} bytes are parsed by a single thread.
+ * Note that the position in a parse exception is relative to the child of the
+ * root node in which it occurred.
+ *
+ * @see DocumentNavigator#getDocument(String)
+ */
+public final class ParallelParser {
+
+	/** The minimum file size in bytes for parallel parsing. */
+	public static final int THRESHOLD = 1 << 22; // 4 MB
+
+	/** The approximate number of bytes parsed by a single task. */
+	public static final int CHUNK_SIZE = 1 << 20; // 1 MB
+
+	private ParallelParser() {} // cannot construct this
+
+
+	/**
+	 * Parses the specified file using the common fork-join pool.
+	 *
+	 * @param file a file with UTF-8 encoded SDA content, not null
+	 * @return a root node
+	 * @throws IOException    if an I/O operation failed or the content is malformed
+	 * @throws ParseException if the content could not be parsed
+	 */
+	public static DataNode parse(File file) throws IOException, ParseException {
+		return parse(file, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * Parses the specified file using the specified fork-join pool.
+	 *
+	 * @param file a file with UTF-8 encoded SDA content, not null
+	 * @param pool the pool that executes the parsing tasks, not null
+	 * @return a root node
+	 * @throws IOException    if an I/O operation failed or the content is malformed
+	 * @throws ParseException if the content could not be parsed
+	 */
+	public static DataNode parse(File file, ForkJoinPool pool) throws IOException, ParseException {
+		return parse(file, pool, MappedFileReader.REGION_SIZE);
+	}
+
+
+	/*
+	 * Parses the specified file, skimming it in windows of the specified size.
+	 */
+	static DataNode parse(File file, ForkJoinPool pool, int window) throws IOException, ParseException {
+
+		long size = file.length();
+		if (size < THRESHOLD) {
+			try (Reader input = new MappedFileReader(file)) {
+				return SDA.parse(input);
+			}
+		}
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			return parse(channel, pool, window);
+		} catch (RuntimeException e) {
+			/*
+			 * Exceptions thrown by tasks may be rethrown by the pool as copies, with the
+			 * original exception as the cause, so we look for the root cause.
+			 */
+			Throwable cause = e;
+			while (cause instanceof RuntimeException && cause.getCause() != null)
+				cause = cause.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof ParseException) throw (ParseException) cause;
+			throw e;
+		}
+	}
+
+
+	/*
+	 * Reads the root node, skims its compound statement for the boundaries of its
+	 * children, and parses them in parallel. The file is skimmed in windows, so it
+	 * may be of any size. A child that runs past the end of a window is skimmed
+	 * again in the next one, which starts at that child and is made larger if the
+	 * child does not fit, up to the 2 GB limit of a single mapped region.
+	 */
+	private static DataNode parse(FileChannel channel, ForkJoinPool pool, int window) throws IOException {
+
+		final long size = channel.size();
+		MappedDocument source = MappedDocument.map(channel, 0, Math.min(size, window));
+
+		int i = source.skipWhitespace(0), j = source.nameEnd(i);
+		if (i == j) throw MappedDocument.error("root node expected", i);
+		String name = source.decode(i, j, false);
+		if (! SDA.isName(name))
+			throw MappedDocument.error("invalid node name '" + name + "'", i);
+
+		String value = null;
+		if ((i = source.skipWhitespace(j)) < source.length && source.get(i) == '"') {
+			j = source.skipString(i + 1);
+			value = source.decode(i + 1, j - 1, true);
+			i = source.skipWhitespace(j);
+		}
+
+		DataNode root = new DataNode(name, value);
+		if (i == source.length || source.get(i) != '{') {
+			if (value == null) throw MappedDocument.error("value or '{' expected", i);
+			if (i < source.length) throw MappedDocument.error("excess input", i);
+			return root;
+		}
+
+		int count = 0; // record the start and end offsets of the children
+		long[] starts = new long[1024], ends = new long[1024];
+		++i; // the opening brace
+		while (true) {
+			boolean last = source.base + source.length == size;
+			if ((i = source.skipWhitespace(i)) == source.length) {
+				if (last) throw MappedDocument.error("'}' expected", size);
+				source = MappedDocument.map(channel, source.base + i, Math.min(size - source.base - i, window));
+				i = 0; continue;
+			}
+			if (source.get(i) == '}') break;
+
+			int end; // the end of the child, or -1 if it may run past the window
+			try {
+				end = source.skipNode(i);
+				if (! last && source.skipWhitespace(end) == source.length) end = -1;
+			} catch (UncheckedIOException e) {
+				if (last) throw e;
+				end = -1;
+			}
+			if (end < 0) {
+				long length = window;
+				if (i == 0) { // the child is larger than the window
+					if (source.length == Integer.MAX_VALUE)
+						throw MappedDocument.error("node exceeds the maximum size of 2 GB", source.base);
+					length = Math.min(source.length * 2L, Integer.MAX_VALUE);
+				}
+				source = MappedDocument.map(channel, source.base + i, Math.min(size - source.base - i, length));
+				i = 0; continue;
+			}
+
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, count * 2); ends = Arrays.copyOf(ends, count * 2);
+			}
+			starts[count] = source.base + i; ends[count++] = source.base + end; i = end;
+		}
+
+		i = source.skipWhitespace(i + 1); // after the closing brace
+		while (i == source.length && source.base + source.length < size) {
+			source = MappedDocument.map(channel, source.base + i, Math.min(size - source.base - i, window));
+			i = source.skipWhitespace(0);
+		}
+		if (i < source.length)
+			throw MappedDocument.error("excess input", source.base + i);
+
+		DataNode[] children = new DataNode[count];
+		pool.invoke(new ParseTask(channel, starts, ends, children, 0, count));
+
+		root.add(null); // a parent, even if the compound is empty
+		for (DataNode child : children)
+			root.add(child);
+		return root;
+	}
+
+
+	/*
+	 * A task that parses a range of children, or splits it into two tasks if the
+	 * range exceeds the chunk size. Each range is mapped as a region of its own.
+	 */
+	@SuppressWarnings("serial")
+	private static final class ParseTask extends RecursiveAction {
+
+		private final FileChannel channel;
+		private final long[] starts, ends;
+		private final DataNode[] children;
+		private final int from, to;
+
+		ParseTask(FileChannel channel, long[] starts, long[] ends, DataNode[] children, int from, int to) {
+			this.channel = channel; this.starts = starts; this.ends = ends;
+			this.children = children; this.from = from; this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (to - from > 1 && ends[to - 1] - starts[from] > CHUNK_SIZE) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ParseTask(channel, starts, ends, children, from, mid),
+					new ParseTask(channel, starts, ends, children, mid, to));
+				return;
+			}
+
+			if (from == to) return;
+			final long base = starts[from];
+			try {
+				MappedDocument source = MappedDocument.map(channel, base, ends[to - 1] - base);
+				for (int k = from; k < to; k++)
+					children[k] = SDA.parse(source.decode((int) (starts[k] - base), (int) (ends[k] - base), false));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (ParseException e) {
+				throw new ParseFailure(e);
+			}
+		}
+	}
+
+
+	/*
+	 * Carries a parse exception out of a task.
+	 */
+	@SuppressWarnings("serial")
+	private static final class ParseFailure extends RuntimeException {
+		ParseFailure(ParseException cause) {
+			super(cause);
+		}
+	}
+
+}
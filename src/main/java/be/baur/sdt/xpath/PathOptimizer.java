@@ -0,0 +1,318 @@
+package be.baur.sdt.xpath;
+
+import java.util.List;
+
+import org.jaxen.expr.AllNodeStep;
+import org.jaxen.expr.BinaryExpr;
+import org.jaxen.expr.DefaultNameStep;
+import org.jaxen.expr.EqualityExpr;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FilterExpr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LiteralExpr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.NameStep;
+import org.jaxen.expr.NumberExpr;
+import org.jaxen.expr.PathExpr;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.Step;
+import org.jaxen.expr.UnaryExpr;
+import org.jaxen.expr.UnionExpr;
+import org.jaxen.expr.VariableReferenceExpr;
+import org.jaxen.expr.iter.IterableDescendantAxis;
+import org.jaxen.saxpath.Axis;
+
+/**
+ * The {@code PathOptimizer} rewrites the steps of a compiled XPath expression
+ * into steps that evaluate faster on SDA documents. It replaces:
+ * <ul>
+ * <li>descendant and descendant-or-self steps with a name test by indexed
+ * steps, see {@link IndexedNameStep};
+ * <li>a <code>//</code> abbreviation followed by a name test (that is,
+ * <code>descendant-or-self::node()/child::name</code>) by a single indexed
+ * <code>descendant::name</code> step, provided that the predicates of the
+ * name test, if any, do not depend on the context position or size;
+ * <li>child steps with a name test, of which the first predicate compares a
+ * string value with a literal or variable, by hashed steps, see
+ * {@link HashedChildStep};
+ * <li>child steps with a single number or <code>last()</code> predicate by
+ * positional steps, see {@link PositionalChildStep};
+ * <li>the argument of <code>count()</code>, if it consists of child steps
+ * without predicates, by a counted path, see {@link CountedLocationPath}.
+ * </ul>
+ * In addition, it replaces location paths and unions by implementations that
+ * sort their results into document order by integer keys, see
+ * {@link DocumentOrder}. The rewritten expression selects the same nodes as
+ * the original one, in the same order.
+ *
+ * @see SDAXPath
+ */
+final class PathOptimizer {
+
+	private PathOptimizer() {} // cannot construct this
+
+
+	/**
+	 * Optimizes the specified expression and its subexpressions. Steps are
+	 * replaced in place, while location paths, path expressions and unions are
+	 * replaced by ordered ones wherever the expression that contains them allows
+	 * this; the (possibly new) expression is returned.
+	 *
+	 * @param expr an expression, not null
+	 * @return the optimized expression, not null
+	 */
+	static Expr optimize(Expr expr) {
+
+		if (expr instanceof LocationPath) {
+			steps(((LocationPath) expr).getSteps());
+			return new OrderedLocationPath((LocationPath) expr);
+		}
+		if (expr instanceof PathExpr) {
+			PathExpr path = (PathExpr) expr;
+			if (path.getFilterExpr() != null) path.setFilterExpr(optimize(path.getFilterExpr()));
+			if (path.getLocationPath() == null) return path;
+			steps(path.getLocationPath().getSteps());
+			return new OrderedPathExpr(path);
+		}
+		if (expr instanceof UnionExpr) {
+			return new OrderedUnionExpr(optimize(((UnionExpr) expr).getLHS()), optimize(((UnionExpr) expr).getRHS()));
+		}
+		/*
+		 * The subexpressions of other expressions cannot be replaced, so these are
+		 * optimized in place only.
+		 */
+		if (expr instanceof FilterExpr) {
+			optimize(((FilterExpr) expr).getExpr());
+			predicates(((FilterExpr) expr).getPredicates());
+		}
+		else if (expr instanceof BinaryExpr) {
+			optimize(((BinaryExpr) expr).getLHS());
+			optimize(((BinaryExpr) expr).getRHS());
+		}
+		else if (expr instanceof UnaryExpr) {
+			optimize(((UnaryExpr) expr).getExpr());
+		}
+		else if (expr instanceof FunctionCallExpr) {
+			@SuppressWarnings("unchecked")
+			List<Object> parameters = ((FunctionCallExpr) expr).getParameters();
+			for (int i = 0; i < parameters.size(); i++)
+				parameters.set(i, optimize((Expr) parameters.get(i)));
+			if (isCall((FunctionCallExpr) expr, "count", 1)) {
+				Object parameter = parameters.get(0);
+				if (parameter instanceof LocationPath && CountedLocationPath.isCountable((LocationPath) parameter))
+					parameters.set(0, new CountedLocationPath((LocationPath) parameter));
+			}
+		}
+		return expr;
+	}
+
+
+	/*
+	 * Optimizes the expressions in a list of predicates.
+	 */
+	private static void predicates(List<?> predicates) {
+		for (Object predicate : predicates)
+			((Predicate) predicate).setExpr(optimize(((Predicate) predicate).getExpr()));
+	}
+
+
+	/*
+	 * Rewrites a list of steps, replacing steps in place.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void steps(List<?> list) {
+
+		List<Object> steps = (List<Object>) list;
+		for (int i = 0; i < steps.size(); i++) {
+			Step step = (Step) steps.get(i);
+			predicates(step.getPredicates());
+
+			if (indexable(step) && step.getAxis() != Axis.CHILD) {
+				DefaultNameStep named = (DefaultNameStep) step;
+				steps.set(i, new IndexedNameStep(named.getIterableAxis(), named.getLocalName(), step.getPredicates()));
+			}
+			else if (step instanceof DefaultNameStep && step.getAxis() == Axis.CHILD && ! step.getPredicates().isEmpty()) {
+				Step replacement = indexable(step) ? hashed((DefaultNameStep) step) : null;
+				if (replacement == null) replacement = positional((DefaultNameStep) step);
+				if (replacement != null) steps.set(i, replacement);
+			}
+			else if (step instanceof AllNodeStep && step.getAxis() == Axis.DESCENDANT_OR_SELF
+					&& step.getPredicates().isEmpty() && i + 1 < steps.size()) {
+				Step next = (Step) steps.get(i + 1);
+				if (indexable(next) && next.getAxis() == Axis.CHILD && positionFree(next.getPredicates())) {
+					predicates(next.getPredicates());
+					steps.set(i, new IndexedNameStep(new IterableDescendantAxis(Axis.DESCENDANT),
+						((NameStep) next).getLocalName(), next.getPredicates()));
+					steps.remove(i + 1);
+				}
+			}
+		}
+	}
+
+
+	/*
+	 * Returns true if a step is a child, descendant or descendant-or-self step
+	 * with a name test.
+	 */
+	private static boolean indexable(Step step) {
+
+		if (! (step instanceof DefaultNameStep)
+			|| step instanceof IndexedNameStep || step instanceof HashedChildStep) return false;
+		DefaultNameStep named = (DefaultNameStep) step;
+		if ("*".equals(named.getLocalName())) return false;
+		if (named.getPrefix() != null && ! named.getPrefix().isEmpty()) return false;
+
+		int axis = step.getAxis();
+		return axis == Axis.CHILD || axis == Axis.DESCENDANT || axis == Axis.DESCENDANT_OR_SELF;
+	}
+
+
+	/*
+	 * Returns a hashed step for a child step of which the first predicate compares
+	 * the string value of the context node or a named child with a literal or a
+	 * variable, or null if the step does not qualify.
+	 */
+	private static Step hashed(DefaultNameStep step) {
+
+		Expr expr = ((Predicate) step.getPredicates().get(0)).getExpr();
+		if (! (expr instanceof EqualityExpr && "=".equals(((EqualityExpr) expr).getOperator()))) return null;
+
+		Expr path = ((EqualityExpr) expr).getLHS(), value = ((EqualityExpr) expr).getRHS();
+		if (! isValue(value)) {
+			path = value; value = ((EqualityExpr) expr).getLHS();
+		}
+		if (! isValue(value) || ! (path instanceof LocationPath)) return null;
+
+		LocationPath location = (LocationPath) path;
+		if (location.isAbsolute() || location.getSteps().size() != 1) return null;
+		Step keyStep = (Step) location.getSteps().get(0);
+		if (! keyStep.getPredicates().isEmpty()) return null;
+
+		String key;
+		if (keyStep instanceof AllNodeStep && keyStep.getAxis() == Axis.SELF)
+			key = null;
+		else if (indexable(keyStep) && keyStep.getAxis() == Axis.CHILD)
+			key = ((NameStep) keyStep).getLocalName();
+		else return null;
+
+		return new HashedChildStep(step.getIterableAxis(), step.getLocalName(), key, value, step.getPredicates());
+	}
+
+
+	/*
+	 * Returns a positional step for a child step with a name test or wildcard and a
+	 * single predicate that is a positive whole number or last(), or null if the
+	 * step does not qualify.
+	 */
+	private static Step positional(DefaultNameStep step) {
+
+		if (step instanceof IndexedNameStep || step instanceof HashedChildStep || step instanceof PositionalChildStep)
+			return null;
+		if (step.getPrefix() != null && ! step.getPrefix().isEmpty() || step.getPredicates().size() != 1)
+			return null;
+
+		Predicate predicate = (Predicate) step.getPredicates().get(0);
+		Expr expr = predicate.getExpr();
+		int position;
+		if (expr instanceof NumberExpr) {
+			double number = ((NumberExpr) expr).getNumber().doubleValue();
+			if (number < 1 || number > Integer.MAX_VALUE || number != Math.floor(number)) return null;
+			position = (int) number;
+		}
+		else if (expr instanceof FunctionCallExpr && isCall((FunctionCallExpr) expr, "last", 0))
+			position = 0;
+		else return null;
+
+		return new PositionalChildStep(step.getIterableAxis(), step.getLocalName(), position, predicate);
+	}
+
+
+	/*
+	 * Returns true if a function call is to the core function with the specified
+	 * name and number of arguments.
+	 */
+	private static boolean isCall(FunctionCallExpr call, String name, int arguments) {
+		return (call.getPrefix() == null || call.getPrefix().isEmpty())
+			&& call.getFunctionName().equals(name) && call.getParameters().size() == arguments;
+	}
+
+
+	/*
+	 * Returns true if an expression is a literal or a variable reference, which
+	 * does not depend on the context node.
+	 */
+	private static boolean isValue(Expr expr) {
+		return expr instanceof LiteralExpr || expr instanceof VariableReferenceExpr;
+	}
+
+
+	/*
+	 * Returns true if none of the predicates depends on the context position or
+	 * size. To be on the safe side, this requires each predicate to be a boolean
+	 * or location path expression, that does not call position() or last().
+	 */
+	static boolean positionFree(List<?> predicates) {
+
+		for (Object predicate : predicates) {
+			Expr expr = ((Predicate) predicate).getExpr();
+			if (! (expr instanceof BinaryExpr && isBoolean((BinaryExpr) expr)
+					|| expr instanceof LocationPath)) return false;
+			if (callsPosition(expr)) return false;
+		}
+		return true;
+	}
+
+
+	/*
+	 * Returns true if a binary expression yields a boolean.
+	 */
+	private static boolean isBoolean(BinaryExpr expr) {
+		switch (expr.getOperator()) {
+			case "=": case "!=": case "<": case ">": case "<=": case ">=": case "and": case "or":
+				return true;
+			default:
+				return false;
+		}
+	}
+
+
+	/*
+	 * Returns true if an expression calls position() or last() anywhere.
+	 */
+	private static boolean callsPosition(Expr expr) {
+
+		if (expr instanceof FunctionCallExpr) {
+			FunctionCallExpr call = (FunctionCallExpr) expr;
+			if (call.getPrefix() == null || call.getPrefix().isEmpty()) {
+				String name = call.getFunctionName();
+				if (name.equals("position") || name.equals("last")) return true;
+			}
+			for (Object parameter : call.getParameters())
+				if (callsPosition((Expr) parameter)) return true;
+			return false;
+		}
+		if (expr instanceof LocationPath) {
+			for (Object step : ((LocationPath) expr).getSteps())
+				for (Object predicate : ((Step) step).getPredicates())
+					if (callsPosition(((Predicate) predicate).getExpr())) return true;
+			return false;
+		}
+		if (expr instanceof PathExpr) {
+			PathExpr path = (PathExpr) expr;
+			return path.getFilterExpr() != null && callsPosition(path.getFilterExpr())
+				|| path.getLocationPath() != null && callsPosition(path.getLocationPath());
+		}
+		if (expr instanceof FilterExpr) {
+			if (callsPosition(((FilterExpr) expr).getExpr())) return true;
+			for (Object predicate : ((FilterExpr) expr).getPredicates())
+				if (callsPosition(((Predicate) predicate).getExpr())) return true;
+			return false;
+		}
+		if (expr instanceof BinaryExpr)
+			return callsPosition(((BinaryExpr) expr).getLHS()) || callsPosition(((BinaryExpr) expr).getRHS());
+		if (expr instanceof UnaryExpr)
+			return callsPosition(((UnaryExpr) expr).getExpr());
+		return false;
+	}
+
+}
@@ -0,0 +1,93 @@
+package be.baur.sdt.xpath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jaxen.Context;
+import org.jaxen.JaxenException;
+import org.jaxen.expr.DefaultNameStep;
+import org.jaxen.expr.Predicate;
+import org.jaxen.expr.iter.IterableAxis;
+
+import be.baur.sda.Node;
+
+/**
+ * A {@code PositionalChildStep} is a child step with a name test or wildcard,
+ * and a single predicate that is a number or <code>last()</code>, such as
+ * <code>item[1]</code> or <code>*[last()]</code>. It selects the child at that
+ * position directly, by index for a wildcard and by a scan from the start or the
+ * end of the children otherwise, without selecting all children first.
+ *
+ * @see PathOptimizer
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+final class PositionalChildStep extends DefaultNameStep {
+
+	private static final long serialVersionUID = 5350864393183624750L;
+	private final String name; // null for any
+	private final int position; // starting at 1, or 0 for the last
+
+
+	/**
+	 * Creates a positional child step.
+	 *
+	 * @param axis      a child axis
+	 * @param name      a node name, or a wildcard
+	 * @param position  the position of the child, starting at 1, or 0 for the last
+	 * @param predicate the positional predicate of the step
+	 */
+	PositionalChildStep(IterableAxis axis, String name, int position, Predicate predicate) {
+		super(axis, "", name, new IndexedNameStep.Predicates());
+		addPredicate(predicate);
+		this.name = "*".equals(name) ? null : name; this.position = position;
+	}
+
+
+	@Override
+	public List evaluate(Context context) throws JaxenException {
+
+		final List contextNodes = context.getNodeSet();
+		if (contextNodes.size() == 1) {
+			Object contextNode = contextNodes.get(0);
+			if (! (contextNode instanceof Node)) return super.evaluate(context);
+			Node node = select((Node) contextNode);
+			return node == null ? Collections.emptyList() : Collections.singletonList(node);
+		}
+
+		List result = new ArrayList(contextNodes.size());
+		for (Object contextNode : contextNodes) {
+			if (! (contextNode instanceof Node)) return super.evaluate(context);
+			Node node = select((Node) contextNode);
+			if (node != null) result.add(node);
+		}
+		return result;
+	}
+
+
+	/*
+	 * Returns the child of a node at the position of this step, or null if there
+	 * is no such child.
+	 */
+	private Node select(Node parent) {
+
+		if (! parent.isParent()) return null;
+		List<Node> children = parent.nodes();
+		final int size = children.size();
+
+		if (name == null) {
+			if (position == 0) return size == 0 ? null : children.get(size - 1);
+			return position <= size ? children.get(position - 1) : null;
+		}
+
+		if (position == 0) {
+			for (int i = size - 1; i >= 0; i--)
+				if (children.get(i).getName().equals(name)) return children.get(i);
+			return null;
+		}
+		for (int i = 0, n = 0; i < size; i++)
+			if (children.get(i).getName().equals(name) && ++n == position) return children.get(i);
+		return null;
+	}
+
+}
@@ -0,0 +1,244 @@
+package be.baur.sdt.xpath;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Objects;
+
+/**
+ * A pull scanner that reads SDA content from a character stream without
+ * building a node tree. The scanner recognizes node names, (quoted) values and
+ * compound statements, and can skip or capture complete nodes as raw SDA text.
+ * This allows large documents to be processed one subtree at a time, for
+ * example:
+ *
+ * <pre>
+ * SDAScanner scanner = new SDAScanner(reader);
+ * String root = scanner.nextName(); scanner.nextValue();
+ * scanner.enterCompound();
+ * while ((name = scanner.nextName()) != null) {
+ *    DataNode record = SDA.parse(scanner.readNode(name));
+ *    ...
+ * }
+ * scanner.exitCompound();
+ * </pre>
+ *
+ * The scanner only checks the structure of the input; the content of captured
+ * nodes is validated when it is parsed.
+ */
+public final class SDAScanner {
+
+	private static final int BUFSIZE = 8192;
+	private static final int EOF = -1;
+
+	private final Reader input;
+	private final char[] buffer = new char[BUFSIZE];
+	private int length = 0; // number of characters in the buffer
+	private int index = 0; // index of the next character in the buffer
+	private long position = 0; // number of characters consumed
+	private StringBuilder capture = null; // receives consumed characters, if set
+
+
+	/**
+	 * Creates a scanner that reads SDA content from a character stream.
+	 *
+	 * @param input a character input stream, not null
+	 */
+	public SDAScanner(Reader input) {
+		this.input = Objects.requireNonNull(input, "input must not be null");
+	}
+
+
+	/**
+	 * Returns the number of characters consumed by this scanner so far.
+	 *
+	 * @return a position in the input, starting at 0
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+
+	/*
+	 * Returns the next character without consuming it, or EOF.
+	 */
+	private int peek() throws IOException {
+		if (index == length) {
+			length = input.read(buffer, 0, BUFSIZE); index = 0;
+			if (length <= 0) {
+				length = 0; return EOF;
+			}
+		}
+		return buffer[index];
+	}
+
+
+	/*
+	 * Consumes and returns the next character, throwing an EOFException at the end
+	 * of input.
+	 */
+	private char read() throws IOException {
+		if (peek() == EOF)
+			throw new EOFException("unexpected end of input at position " + position);
+		char c = buffer[index++]; ++position;
+		if (capture != null) capture.append(c);
+		return c;
+	}
+
+
+	/*
+	 * Skips white space and returns the next character without consuming it.
+	 */
+	private int skipWhitespace() throws IOException {
+		int c;
+		while ((c = peek()) != EOF && Character.isWhitespace(c))
+			read();
+		return c;
+	}
+
+
+	/**
+	 * Reads the name of the next node. This method returns null if the end of a
+	 * compound statement or the end of input was reached, neither of which is
+	 * consumed.
+	 *
+	 * @return a node name, may be null
+	 * @throws IOException if an I/O error occurs
+	 */
+	public String nextName() throws IOException {
+
+		int c = skipWhitespace();
+		if (c == EOF || c == '}')
+			return null;
+
+		StringBuilder name = new StringBuilder();
+		while ((c = peek()) != EOF && c != '"' && c != '{' && c != '}' && !Character.isWhitespace(c))
+			name.append(read());
+
+		if (name.length() == 0)
+			throw new IOException("node name expected at position " + position);
+		return name.toString();
+	}
+
+
+	/**
+	 * Reads the value of the current node, after its name has been read. This
+	 * method returns the unescaped value, or null if the node has no value.
+	 *
+	 * @return a value, may be null
+	 * @throws IOException if an I/O error occurs or the value is not terminated
+	 */
+	public String nextValue() throws IOException {
+
+		if (skipWhitespace() != '"')
+			return null;
+
+		read(); // opening quote
+		StringBuilder value = new StringBuilder();
+		char c;
+		while ((c = read()) != '"') {
+			if (c == '\\') c = read(); // escaped character
+			value.append(c);
+		}
+		return value.toString();
+	}
+
+
+	/**
+	 * Enters the compound statement of the current node, if it has one. This
+	 * method returns true if an opening brace was consumed, and false otherwise.
+	 *
+	 * @return true or false
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean enterCompound() throws IOException {
+
+		if (skipWhitespace() != '{')
+			return false;
+		read(); return true;
+	}
+
+
+	/**
+	 * Exits the compound statement that was last entered. This method expects a
+	 * closing brace, and consumes it.
+	 *
+	 * @throws IOException if an I/O error occurs or no closing brace was found
+	 */
+	public void exitCompound() throws IOException {
+
+		if (skipWhitespace() != '}')
+			throw new IOException("'}' expected at position " + position);
+		read();
+	}
+
+
+	/**
+	 * Verifies that there is no more content than (trailing) white space.
+	 *
+	 * @throws IOException if an I/O error occurs or excess input was found
+	 */
+	public void exitDocument() throws IOException {
+
+		if (skipWhitespace() != EOF)
+			throw new IOException("excess input at position " + position);
+	}
+
+
+	/**
+	 * Skips the value and compound statement of the current node, after its name
+	 * has been read.
+	 *
+	 * @throws IOException if an I/O error occurs or the node is not terminated
+	 */
+	public void skipNode() throws IOException {
+
+		int c = skipWhitespace();
+		if (c == '"') {
+			read(); skipString(); c = skipWhitespace();
+		}
+		if (c != '{')
+			return; // a leaf node
+
+		read(); int depth = 1; // skip the compound statement
+		while (depth > 0) {
+			switch (read()) {
+				case '"': skipString(); break;
+				case '{': ++depth; break;
+				case '}': --depth; break;
+			}
+		}
+	}
+
+
+	/*
+	 * Skips the remainder of a quoted string after the opening quote, including
+	 * escaped characters.
+	 */
+	private void skipString() throws IOException {
+		char c;
+		while ((c = read()) != '"')
+			if (c == '\\') read();
+	}
+
+
+	/**
+	 * Reads the value and compound statement of the current node, after its name
+	 * has been read, and returns the node as raw SDA text. The result can be
+	 * parsed into a data node.
+	 *
+	 * @param name the name of the current node, not null
+	 * @return a string in SDA format
+	 * @throws IOException if an I/O error occurs or the node is not terminated
+	 */
+	public String readNode(String name) throws IOException {
+
+		capture = new StringBuilder(name);
+		try {
+			skipNode(); return capture.toString();
+		} finally {
+			capture = null;
+		}
+	}
+
+}
@@ -1,7 +1,12 @@
 package be.baur.sdt.xpath;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.jaxen.BaseXPath;
+import org.jaxen.Context;
 import org.jaxen.JaxenException;
+import org.jaxen.expr.Expr;
 
 
 /**
@@ -22,10 +27,15 @@ import org.jaxen.JaxenException;
 public class SDAXPath extends BaseXPath {
 
 	private static final long serialVersionUID = 368489177460992020L;
+	private final Expr rootExpr; // the optimized expression
+	private final ExistenceTest existenceTest; // or null if the expression is not one
 	
 	/**
 	 * Create a new <code>SDAXPath</code> from an XPath expression. Note that
-	 * support for SDT extensions is <i>not</i> included by default.
+	 * support for SDT extensions is <i>not</i> included by default. Descendant
+	 * steps with a name test are answered from a name index when evaluated on a
+	 * frozen document, see {@link FrozenNode}, and selected nodes are sorted into
+	 * document order by integer keys rather than by walking the tree.
 	 *
 	 * @param expression an XPath expression
 	 * @throws JaxenException if there is a syntax error in the expression
@@ -34,6 +44,49 @@ public class SDAXPath extends BaseXPath {
 	public SDAXPath(String expression) throws JaxenException {
 		
 		super(expression, DocumentNavigator.getInstance());
+		rootExpr = PathOptimizer.optimize(super.getRootExpr());
+		existenceTest = ExistenceTest.compile(rootExpr);
+	}
+
+
+	/**
+	 * Returns the root expression of this XPath, as optimized for SDA documents.
+	 *
+	 * @return an expression, not null
+	 */
+	@Override
+	public Expr getRootExpr() {
+		return rootExpr;
+	}
+
+
+	/**
+	 * Evaluates this XPath as a boolean. If the expression only tests whether a
+	 * path selects any nodes, like <code>orders/order[amount &gt; 1000]</code>,
+	 * <code>count(item) &gt; 0</code> or <code>not(item)</code>, evaluation stops
+	 * at the first node found rather than selecting all of them.
+	 *
+	 * @param node the node, node-set or Context object for evaluation
+	 * @return the boolean value of the expression
+	 * @throws JaxenException if an XPath error occurs during expression evaluation
+	 */
+	@Override
+	public boolean booleanValueOf(Object node) throws JaxenException {
+
+		if (existenceTest == null) return super.booleanValueOf(node);
+		return existenceTest.evaluate(getContext(node));
+	}
+
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	protected List selectNodesForContext(Context context) throws JaxenException {
+
+		Object result = rootExpr.evaluate(context);
+		if (result instanceof List) return (List) result;
+		List<Object> list = new ArrayList<Object>(1);
+		list.add(result);
+		return list;
 	}
 	
 	
@@ -10,13 +10,18 @@ import org.jaxen.SimpleFunctionContext;
 import org.jaxen.UnresolvableException;
 import org.jaxen.XPathFunctionContext;
 
+import be.baur.sdt.xpath.function.Aggregate;
 import be.baur.sdt.xpath.function.CompareNumberFunction;
 import be.baur.sdt.xpath.function.CompareStringFunction;
 import be.baur.sdt.xpath.function.DocumentNodeFunction;
+import be.baur.sdt.xpath.function.KeyFunction;
 import be.baur.sdt.xpath.function.LeftFunction;
+import be.baur.sdt.xpath.function.MatchesFunction;
 import be.baur.sdt.xpath.function.ParseSDAFunction;
 import be.baur.sdt.xpath.function.RenderSDAFunction;
+import be.baur.sdt.xpath.function.ReplaceFunction;
 import be.baur.sdt.xpath.function.RightFunction;
+import be.baur.sdt.xpath.function.StatisticsFunction;
 import be.baur.sdt.xpath.function.StringJoinFunction;
 import be.baur.sdt.xpath.function.TokenizeFunction;
 import be.baur.sdt.xpath.function.dtm.AddPeriodToDateTimeFunction;
@@ -64,6 +69,7 @@ public class SDTFunctionContext implements FunctionContext {
 		// Add SDT extensions to the core Xpath functions and Jaxen extensions
 		FC.registerFunction(FUNCTIONS_NS_URI, AddToDateTimeFunction.NAME, new AddToDateTimeFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, AddPeriodToDateTimeFunction.NAME, new AddPeriodToDateTimeFunction());
+		FC.registerFunction(FUNCTIONS_NS_URI, Aggregate.Operation.AVG.getName(), Aggregate.Operation.AVG);
 		FC.registerFunction(FUNCTIONS_NS_URI, CompareDateTimeFunction.NAME, new CompareDateTimeFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, CompareNumberFunction.NAME, new CompareNumberFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, CompareStringFunction.NAME, new CompareStringFunction());
@@ -75,17 +81,23 @@ public class SDTFunctionContext implements FunctionContext {
 		FC.registerFunction(FUNCTIONS_NS_URI, DocumentNodeFunction.NAME, new DocumentNodeFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, FormatDateTimeFunction.NAME, new FormatDateTimeFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, ImplicitTimeZoneFunction.NAME, new ImplicitTimeZoneFunction());
+		FC.registerFunction(FUNCTIONS_NS_URI, KeyFunction.NAME, new KeyFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, LeftFunction.NAME, new LeftFunction());
+		FC.registerFunction(FUNCTIONS_NS_URI, Aggregate.Operation.MAX.getName(), Aggregate.Operation.MAX);
+		FC.registerFunction(FUNCTIONS_NS_URI, Aggregate.Operation.MIN.getName(), Aggregate.Operation.MIN);
 		FC.registerFunction(FUNCTIONS_NS_URI, MillisToDateTimeFunction.NAME, new MillisToDateTimeFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, ParseDateTimeFunction.NAME, new ParseDateTimeFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, ParseSDAFunction.NAME, new ParseSDAFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, RenderSDAFunction.NAME, new RenderSDAFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, RightFunction.NAME, new RightFunction());
+		FC.registerFunction(FUNCTIONS_NS_URI, StatisticsFunction.NAME, new StatisticsFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, SubtractDateTimesFunction.NAME, new SubtractDateTimesFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, SystemDateTimeFunction.NAME, new SystemDateTimeFunction());
 		FC.registerFunction(FUNCTIONS_NS_URI, TimeZoneFromDateTime.NAME, new TimeZoneFromDateTime());
 		FC.registerFunction(FUNCTIONS_NS_URI, TokenizeFunction.NAME, new TokenizeFunction());
 		// W3C like functions
+		FC.registerFunction(W3C_FUNCTIONS_NS_URI, MatchesFunction.NAME, new MatchesFunction());
+		FC.registerFunction(W3C_FUNCTIONS_NS_URI, ReplaceFunction.NAME, new ReplaceFunction());
 		FC.registerFunction(W3C_FUNCTIONS_NS_URI, StringJoinFunction.NAME, new StringJoinFunction());
 
 	}
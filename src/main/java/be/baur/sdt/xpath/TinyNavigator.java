@@ -0,0 +1,415 @@
+package be.baur.sdt.xpath;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jaxen.DefaultNavigator;
+import org.jaxen.FunctionCallException;
+import org.jaxen.JaxenConstants;
+import org.jaxen.JaxenException;
+import org.jaxen.Navigator;
+import org.jaxen.UnsupportedAxisException;
+import org.jaxen.XPath;
+
+/**
+ * The {@code TinyNavigator} navigates the nodes of a {@link TinyTree}. Its axes
+ * follow the arrays of the tree: the child and sibling axes follow the chain of
+ * next siblings, the ancestor axes follow the parents, and since nodes are
+ * numbered in document order, the descendants of a node are a range of numbers
+ * that is iterated without a stack.
+ * <p>
+ * The {@link DocumentNavigator} delegates to this navigator for tiny nodes, so
+ * XPath expressions created by either of them can be evaluated on tiny trees as
+ * well as on data nodes, and the result of <code>document()</code>, which is a
+ * regular SDA document, can be navigated as before.
+ */
+@SuppressWarnings("rawtypes")
+public final class TinyNavigator extends DefaultNavigator {
+
+	private static final long serialVersionUID = -1948213905621473412L;
+	static final TinyNavigator SINGLETON = new TinyNavigator();
+
+
+	private TinyNavigator() {
+	}
+
+
+	/**
+	 * Returns the singleton instance of this navigator.
+	 *
+	 * @return a navigator, not null
+	 */
+	public static Navigator getInstance() {
+		return SINGLETON;
+	}
+
+
+	@Override
+	public Iterator getChildAxisIterator(Object contextNode) {
+		TinyNode node = (TinyNode) contextNode;
+		int child = node.getTree().firstChild(node.getNumber());
+		return child == TinyTree.NONE ? JaxenConstants.EMPTY_ITERATOR : new Siblings(node.getTree(), child);
+	}
+
+
+	@Override
+	public Iterator getParentAxisIterator(Object contextNode) {
+		TinyNode node = (TinyNode) contextNode;
+		int parent = node.getTree().parent(node.getNumber());
+		return parent == TinyTree.NONE ? JaxenConstants.EMPTY_ITERATOR : new Ancestors(node.getTree(), parent, false);
+	}
+
+
+	@Override
+	public Iterator getSelfAxisIterator(Object contextNode) {
+		TinyNode node = (TinyNode) contextNode;
+		return new Ancestors(node.getTree(), node.getNumber(), false);
+	}
+
+
+	@Override
+	public Iterator getAncestorAxisIterator(Object contextNode) {
+		TinyNode node = (TinyNode) contextNode;
+		int parent = node.getTree().parent(node.getNumber());
+		return parent == TinyTree.NONE ? JaxenConstants.EMPTY_ITERATOR : new Ancestors(node.getTree(), parent, true);
+	}
+
+
+	@Override
+	public Iterator getAncestorOrSelfAxisIterator(Object contextNode) {
+		TinyNode node = (TinyNode) contextNode;
+		return new Ancestors(node.getTree(), node.getNumber(), true);
+	}
+
+
+	@Override
+	public Iterator getDescendantAxisIterator(Object contextNode) {
+		TinyNode node = (TinyNode) contextNode;
+		int from = node.getNumber() + 1, to = node.getTree().end(node.getNumber());
+		return from == to ? JaxenConstants.EMPTY_ITERATOR : new Range(node.getTree(), from, to);
+	}
+
+
+	@Override
+	public Iterator getDescendantOrSelfAxisIterator(Object contextNode) {
+		TinyNode node = (TinyNode) contextNode;
+		return new Range(node.getTree(), node.getNumber(), node.getTree().end(node.getNumber()));
+	}
+
+
+	@Override
+	public Iterator getFollowingSiblingAxisIterator(Object contextNode) {
+		TinyNode node = (TinyNode) contextNode;
+		int sibling = node.getTree().nextSibling(node.getNumber());
+		return sibling == TinyTree.NONE ? JaxenConstants.EMPTY_ITERATOR : new Siblings(node.getTree(), sibling);
+	}
+
+
+	@Override
+	public Iterator getPrecedingSiblingAxisIterator(Object contextNode) {
+
+		TinyNode node = (TinyNode) contextNode;
+		TinyTree tree = node.getTree();
+		int parent = tree.parent(node.getNumber());
+		if (parent == TinyTree.NONE) return JaxenConstants.EMPTY_ITERATOR;
+
+		int[] siblings = new int[8]; int count = 0; // in reverse document order
+		for (int sibling = tree.firstChild(parent); sibling != node.getNumber(); sibling = tree.nextSibling(sibling)) {
+			if (count == siblings.length) siblings = Arrays.copyOf(siblings, count * 2);
+			siblings[count++] = sibling;
+		}
+		return count == 0 ? JaxenConstants.EMPTY_ITERATOR : new Reversed(tree, siblings, count);
+	}
+
+
+	@Override
+	public Iterator getAttributeAxisIterator(Object contextNode) throws UnsupportedAxisException {
+		throw new UnsupportedAxisException("SDA does not support attributes");
+	}
+
+
+	@Override
+	public Iterator getNamespaceAxisIterator(Object contextNode) throws UnsupportedAxisException {
+		throw new UnsupportedAxisException("SDA does not support namespaces");
+	}
+
+
+	@Override
+	public Object getDocumentNode(Object contextNode) {
+		return ((TinyNode) contextNode).getTree().getDocument();
+	}
+
+
+	@Override
+	public Object getParentNode(Object contextNode) {
+		TinyNode node = (TinyNode) contextNode;
+		int parent = node.getTree().parent(node.getNumber());
+		return parent == TinyTree.NONE ? null : node.getTree().node(parent);
+	}
+
+
+	@Override
+	public String translateNamespacePrefixToUri(String prefix, Object contextNode) {
+		throw new UnsupportedOperationException("SDA does not support namespaces");
+	}
+
+
+	@Override
+	public String getProcessingInstructionTarget(Object contextNode) {
+		throw new UnsupportedOperationException("SDA does not support processing instructions");
+	}
+
+
+	@Override
+	public String getProcessingInstructionData(Object contextNode) {
+		throw new UnsupportedOperationException("SDA does not support processing instructions");
+	}
+
+
+	/**
+	 * Loads a document by means of the {@link DocumentNavigator}. The result is a
+	 * regular SDA document, not a tiny tree.
+	 */
+	@Override
+	public Object getDocument(String uri) throws FunctionCallException {
+		return DocumentNavigator.getInstance().getDocument(uri);
+	}
+
+
+	@Override
+	public Object getElementById(Object contextNode, String elementId) {
+		throw new UnsupportedOperationException("SDA does not support element Ids");
+	}
+
+
+	@Override
+	public String getElementNamespaceUri(Object element) {
+		return null;
+	}
+
+
+	@Override
+	public String getElementName(Object element) {
+		return ((TinyNode) element).getName();
+	}
+
+
+	@Override
+	public String getElementQName(Object element) {
+		return ((TinyNode) element).getName();
+	}
+
+
+	@Override
+	public String getAttributeNamespaceUri(Object attr) {
+		throw new UnsupportedOperationException("SDA does not support attributes");
+	}
+
+
+	@Override
+	public String getAttributeName(Object attr) {
+		throw new UnsupportedOperationException("SDA does not support attributes");
+	}
+
+
+	@Override
+	public String getAttributeQName(Object attr) {
+		throw new UnsupportedOperationException("SDA does not support attributes");
+	}
+
+
+	@Override
+	public boolean isDocument(Object object) {
+		return (object instanceof TinyNode) && ((TinyNode) object).isDocument();
+	}
+
+
+	@Override
+	public boolean isElement(Object object) {
+		return (object instanceof TinyNode) && ! ((TinyNode) object).isDocument();
+	}
+
+
+	@Override
+	public boolean isAttribute(Object object) {
+		return false;
+	}
+
+
+	@Override
+	public boolean isNamespace(Object object) {
+		return false;
+	}
+
+
+	@Override
+	public boolean isComment(Object object) {
+		return false;
+	}
+
+
+	@Override
+	public boolean isText(Object object) {
+		return false;
+	}
+
+
+	@Override
+	public boolean isProcessingInstruction(Object object) {
+		return false;
+	}
+
+
+	@Override
+	public String getCommentStringValue(Object comment) {
+		throw new UnsupportedOperationException("SDA does not support comments");
+	}
+
+
+	@Override
+	public String getElementStringValue(Object element) {
+		return ((TinyNode) element).getValue();
+	}
+
+
+	@Override
+	public String getAttributeStringValue(Object attr) {
+		throw new UnsupportedOperationException("SDA does not support attributes");
+	}
+
+
+	@Override
+	public String getNamespaceStringValue(Object ns) {
+		throw new UnsupportedOperationException("SDA does not support namespaces");
+	}
+
+
+	@Override
+	public String getTextStringValue(Object text) {
+		throw new UnsupportedOperationException("SDA does not support text nodes");
+	}
+
+
+	@Override
+	public String getNamespacePrefix(Object ns) {
+		throw new UnsupportedOperationException("SDA does not support namespaces");
+	}
+
+
+	/**
+	 * Returns an {@link SDAXPath}, which navigates both tiny trees and data nodes.
+	 */
+	@Override
+	public XPath parseXPath(String xpath) throws JaxenException {
+		return new SDAXPath(xpath);
+	}
+
+
+	/*
+	 * Iterates over a node and its next siblings.
+	 */
+	private static final class Siblings implements Iterator<TinyNode> {
+
+		private final TinyTree tree;
+		private int next;
+
+		Siblings(TinyTree tree, int first) {
+			this.tree = tree; this.next = first;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != TinyTree.NONE;
+		}
+
+		@Override
+		public TinyNode next() {
+			if (next == TinyTree.NONE) throw new NoSuchElementException();
+			TinyNode node = tree.node(next);
+			next = tree.nextSibling(next);
+			return node;
+		}
+	}
+
+
+	/*
+	 * Iterates over a node, and optionally its ancestors.
+	 */
+	private static final class Ancestors implements Iterator<TinyNode> {
+
+		private final TinyTree tree;
+		private final boolean up;
+		private int next;
+
+		Ancestors(TinyTree tree, int first, boolean up) {
+			this.tree = tree; this.next = first; this.up = up;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != TinyTree.NONE;
+		}
+
+		@Override
+		public TinyNode next() {
+			if (next == TinyTree.NONE) throw new NoSuchElementException();
+			TinyNode node = tree.node(next);
+			next = up ? tree.parent(next) : TinyTree.NONE;
+			return node;
+		}
+	}
+
+
+	/*
+	 * Iterates over a range of node numbers, in document order.
+	 */
+	private static final class Range implements Iterator<TinyNode> {
+
+		private final TinyTree tree;
+		private final int end;
+		private int next;
+
+		Range(TinyTree tree, int from, int to) {
+			this.tree = tree; this.next = from; this.end = to;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < end;
+		}
+
+		@Override
+		public TinyNode next() {
+			if (next >= end) throw new NoSuchElementException();
+			return tree.node(next++);
+		}
+	}
+
+
+	/*
+	 * Iterates over an array of node numbers from the end to the start.
+	 */
+	private static final class Reversed implements Iterator<TinyNode> {
+
+		private final TinyTree tree;
+		private final int[] numbers;
+		private int next;
+
+		Reversed(TinyTree tree, int[] numbers, int count) {
+			this.tree = tree; this.numbers = numbers; this.next = count - 1;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next >= 0;
+		}
+
+		@Override
+		public TinyNode next() {
+			if (next < 0) throw new NoSuchElementException();
+			return tree.node(numbers[next--]);
+		}
+	}
+
+}
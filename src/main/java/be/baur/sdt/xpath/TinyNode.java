@@ -0,0 +1,110 @@
+package be.baur.sdt.xpath;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import be.baur.sda.DataNode;
+
+/**
+ * A {@code TinyNode} represents a node in a {@link TinyTree}. It holds no data
+ * other than its tree and its number in that tree, and it is created when the
+ * node is first accessed. While it is in use, the tree returns the same object
+ * for the node, so nodes can be compared by identity; once no node of a tree
+ * is in use, they are all reclaimed. A tiny node is not an SDA {@code Node}; it
+ * can be navigated by XPath expressions, and copied into a data node when
+ * needed.
+ */
+public final class TinyNode {
+
+	private final TinyTree tree;
+	private final int number; // in document order, 0 for the document node
+	@SuppressWarnings("unused")
+	private final AtomicReferenceArray<TinyNode> table; // keeps the node objects of the tree in use
+
+
+	TinyNode(TinyTree tree, int number, AtomicReferenceArray<TinyNode> table) {
+		this.tree = tree; this.number = number; this.table = table;
+	}
+
+
+	/**
+	 * Returns the tree that this node belongs to.
+	 *
+	 * @return a tree, not null
+	 */
+	public TinyTree getTree() {
+		return tree;
+	}
+
+
+	/**
+	 * Returns the number of this node in its tree. Nodes are numbered in document
+	 * order, starting with 0 for the document node.
+	 *
+	 * @return a number, not negative
+	 */
+	int getNumber() {
+		return number;
+	}
+
+
+	/**
+	 * Returns the name of this node. The name of the document node is empty.
+	 *
+	 * @return a name, not null
+	 */
+	public String getName() {
+		return tree.name(number);
+	}
+
+
+	/**
+	 * Returns the value of this node. The value of the document node is empty.
+	 *
+	 * @return a value, not null
+	 */
+	public String getValue() {
+		return tree.value(number);
+	}
+
+
+	/**
+	 * Returns whether this is the document node of its tree.
+	 *
+	 * @return true or false
+	 */
+	public boolean isDocument() {
+		return number == 0;
+	}
+
+
+	/**
+	 * Returns whether this node has a compound statement, even if it is empty.
+	 *
+	 * @return true or false
+	 */
+	public boolean isParent() {
+		return tree.isParent(number);
+	}
+
+
+	/**
+	 * Returns a copy of this node and its descendants as data nodes. For the
+	 * document node, a copy of the root node is returned.
+	 *
+	 * @return a new data node, not null
+	 */
+	public DataNode toDataNode() {
+		return tree.toDataNode(number);
+	}
+
+
+	/**
+	 * Returns the SDA rendering of this node, like that of a data node. For the
+	 * document node, the rendering of the root node is returned.
+	 */
+	@Override
+	public String toString() {
+		return toDataNode().toString();
+	}
+
+}
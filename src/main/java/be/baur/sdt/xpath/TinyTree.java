@@ -0,0 +1,358 @@
+package be.baur.sdt.xpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.Node;
+import be.baur.sda.SDA;
+
+/**
+ * A {@code TinyTree} is a compact, read-only representation of an SDA document.
+ * Rather than an object per node, with a list of children and separate name and
+ * value strings, it keeps the structure in a few arrays of integers (the parent,
+ * first child and next sibling of every node), the names in a pool of distinct
+ * strings, and the values in a single character buffer. Nodes are numbered in
+ * document order, with the document node as number 0 and the root node as 1.
+ * <p>
+ * This takes several times less memory than a tree of data nodes, which allows
+ * large reference documents to be kept resident, and navigation follows arrays
+ * rather than pointers. A tiny tree is navigated by the {@link TinyNavigator},
+ * through {@link TinyNode} objects that are created on first access. These are
+ * kept in a table for as long as any of them is in use, so that a node is
+ * always represented by the same object, and released with the table when none
+ * of them is, so that a traversal leaves nothing behind but the tree. The
+ * {@link DocumentNavigator} delegates to the tiny navigator for such nodes, so
+ * that transforms can execute on a tiny tree directly.
+ * <p>
+ * A tiny tree is immutable, and can be shared between threads.
+ *
+ * @see be.baur.sdt.transform.TransformInput#of(TinyTree)
+ */
+public final class TinyTree {
+
+	static final int NONE = -1; // no such node
+
+	private final int size; // the number of nodes, including the document node
+	private final int[] parents, firstChildren, nextSiblings;
+	private final int[] names; // index of the name of each node in the name pool
+	private final String[] pool; // the distinct node names
+	private final int[] values; // start of the value of each node in the buffer, and the end of the last
+	private final char[] buffer; // the values of all nodes
+	private final BitSet compound; // the nodes that have a compound statement
+	private volatile WeakReference<AtomicReferenceArray<TinyNode>> handles; // held strongly by the nodes only
+
+
+	private TinyTree(Builder b) {
+
+		size = b.size;
+		parents = Arrays.copyOf(b.parents, size);
+		firstChildren = Arrays.copyOf(b.firstChildren, size);
+		nextSiblings = Arrays.copyOf(b.nextSiblings, size);
+		names = Arrays.copyOf(b.names, size);
+		pool = b.pool.toArray(new String[b.pool.size()]);
+		values = Arrays.copyOf(b.values, size + 1);
+		buffer = Arrays.copyOf(b.buffer, b.length);
+		compound = b.compound;
+		handles = new WeakReference<AtomicReferenceArray<TinyNode>>(null);
+	}
+
+
+	/**
+	 * Reads a tiny tree from a character stream with SDA content. No data nodes
+	 * are created while reading.
+	 *
+	 * @param input a character input stream, not null
+	 * @return a tiny tree
+	 * @throws IOException if an I/O error occurs or the content is malformed
+	 */
+	public static TinyTree parse(Reader input) throws IOException {
+
+		SDAScanner scanner = new SDAScanner(input);
+		Builder builder = new Builder();
+
+		String name = scanner.nextName();
+		if (name == null) throw new IOException("node name expected at position " + scanner.getPosition());
+		int node = builder.add(0, checked(name, scanner), scanner.nextValue());
+
+		Deque<Integer> open = new ArrayDeque<Integer>(); // nodes of which the compound statement was entered
+		if (scanner.enterCompound()) {
+			builder.compound.set(node); open.push(node);
+		}
+		while (! open.isEmpty()) {
+			if ((name = scanner.nextName()) == null) {
+				scanner.exitCompound(); open.pop(); continue;
+			}
+			node = builder.add(open.peek(), checked(name, scanner), scanner.nextValue());
+			if (scanner.enterCompound()) {
+				builder.compound.set(node); open.push(node);
+			}
+		}
+		scanner.exitDocument();
+		return new TinyTree(builder);
+	}
+
+
+	private static String checked(String name, SDAScanner scanner) throws IOException {
+		if (! SDA.isName(name))
+			throw new IOException("invalid node name '" + name + "' at position " + scanner.getPosition());
+		return name;
+	}
+
+
+	/**
+	 * Reads a tiny tree from the specified file, which is memory-mapped, see
+	 * {@link MappedFileReader}.
+	 *
+	 * @param file a file with SDA content, not null
+	 * @return a tiny tree
+	 * @throws IOException if an I/O error occurs or the content is malformed
+	 */
+	public static TinyTree parse(File file) throws IOException {
+		try (Reader input = new MappedFileReader(file)) {
+			return parse(input);
+		}
+	}
+
+
+	/**
+	 * Returns a tiny tree with a copy of the specified node and its descendants.
+	 *
+	 * @param root a data node, not null
+	 * @return a tiny tree
+	 */
+	public static TinyTree of(DataNode root) {
+
+		Builder builder = new Builder();
+		Deque<Node> nodes = new ArrayDeque<Node>();
+		Deque<Integer> parents = new ArrayDeque<Integer>();
+		nodes.push(root); parents.push(0);
+
+		while (! nodes.isEmpty()) {
+			Node node = nodes.pop();
+			int number = builder.add(parents.pop(), node.getName(), ((DataNode) node).getValue());
+			if (node.isParent()) {
+				builder.compound.set(number);
+				List<Node> children = node.nodes();
+				for (int i = children.size() - 1; i >= 0; i--) {
+					nodes.push(children.get(i)); parents.push(number);
+				}
+			}
+		}
+		return new TinyTree(builder);
+	}
+
+
+	/**
+	 * Returns the document node of this tree.
+	 *
+	 * @return a node, not null
+	 */
+	public TinyNode getDocument() {
+		return node(0);
+	}
+
+
+	/**
+	 * Returns the root node of this tree.
+	 *
+	 * @return a node, not null
+	 */
+	public TinyNode getRoot() {
+		return node(1);
+	}
+
+
+	/**
+	 * Returns the number of nodes in this tree, including the document node.
+	 *
+	 * @return a size, at least 2
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * Returns an estimate of the memory used by the arrays of this tree, in bytes.
+	 * Node objects that were created on access, and the table that holds them
+	 * while they are in use, are not included.
+	 *
+	 * @return a number of bytes
+	 */
+	public long getMemorySize() {
+		return 4L * (5 * size + 1) + 2L * buffer.length + compound.size() / 8;
+	}
+
+
+	/*
+	 * Returns the node object for the specified number, creating it on first use.
+	 * Every node refers to the table that holds it, and the tree refers to the
+	 * table weakly, so the table is reclaimed once none of its nodes is in use.
+	 * Until then, the tree finds the same table, so that there is never more than
+	 * one object for a node.
+	 */
+	TinyNode node(int number) {
+
+		AtomicReferenceArray<TinyNode> table = handles.get();
+		if (table == null) table = newHandles();
+		TinyNode node = table.get(number);
+		if (node == null && ! table.compareAndSet(number, null, node = new TinyNode(this, number, table)))
+			node = table.get(number);
+		return node;
+	}
+
+
+	/*
+	 * Returns a new table for the node objects, unless another thread created one.
+	 */
+	private synchronized AtomicReferenceArray<TinyNode> newHandles() {
+
+		AtomicReferenceArray<TinyNode> table = handles.get();
+		if (table == null)
+			handles = new WeakReference<AtomicReferenceArray<TinyNode>>(table = new AtomicReferenceArray<TinyNode>(size));
+		return table;
+	}
+
+
+	int parent(int number) {
+		return parents[number];
+	}
+
+
+	int firstChild(int number) {
+		return firstChildren[number];
+	}
+
+
+	int nextSibling(int number) {
+		return nextSiblings[number];
+	}
+
+
+	String name(int number) {
+		return pool[names[number]];
+	}
+
+
+	String value(int number) {
+		return new String(buffer, values[number], values[number + 1] - values[number]);
+	}
+
+
+	boolean isParent(int number) {
+		return compound.get(number);
+	}
+
+
+	/*
+	 * Returns the number after the last descendant of a node.
+	 */
+	int end(int number) {
+
+		for (int node = number; node > 0; node = parents[node])
+			if (nextSiblings[node] != NONE) return nextSiblings[node];
+		return size;
+	}
+
+
+	/**
+	 * Returns a copy of the specified node and its descendants as data nodes. For
+	 * the document node, a copy of the root node is returned.
+	 *
+	 * @param number the number of a node in this tree
+	 * @return a data node, not null
+	 */
+	DataNode toDataNode(int number) {
+
+		if (number == 0) number = 1;
+		DataNode top = new DataNode(name(number), value(number));
+		if (isParent(number)) top.add(null); // a parent, even if it has no children
+
+		Deque<DataNode> copies = new ArrayDeque<DataNode>();
+		Deque<Integer> numbers = new ArrayDeque<Integer>();
+		copies.push(top); numbers.push(number);
+		while (! numbers.isEmpty()) {
+			DataNode copy = copies.pop();
+			for (int child = firstChildren[numbers.pop()]; child != NONE; child = nextSiblings[child]) {
+				DataNode node = new DataNode(name(child), value(child));
+				if (isParent(child)) {
+					node.add(null);
+					copies.push(node); numbers.push(child);
+				}
+				copy.add(node);
+			}
+		}
+		return top;
+	}
+
+
+	/*
+	 * Collects the nodes of a tree in growing arrays, in document order.
+	 */
+	private static final class Builder {
+
+		private int size = 0, length = 0;
+		private int[] parents = new int[256], firstChildren = new int[256], nextSiblings = new int[256];
+		private int[] names = new int[256], values = new int[257], lastChildren = new int[256];
+		private char[] buffer = new char[4096];
+		private final List<String> pool = new ArrayList<String>();
+		private final Map<String, Integer> numbers = new HashMap<String, Integer>(); // of the names in the pool
+		private final BitSet compound = new BitSet();
+
+		Builder() {
+			add(NONE, "", null); // the document node
+			compound.set(0);
+		}
+
+		/*
+		 * Adds a node as the last child of the specified parent, and returns its number.
+		 */
+		int add(int parent, String name, String value) {
+
+			if (size == parents.length) {
+				int capacity = size * 2;
+				parents = Arrays.copyOf(parents, capacity); firstChildren = Arrays.copyOf(firstChildren, capacity);
+				nextSiblings = Arrays.copyOf(nextSiblings, capacity); names = Arrays.copyOf(names, capacity);
+				values = Arrays.copyOf(values, capacity + 1); lastChildren = Arrays.copyOf(lastChildren, capacity);
+			}
+			final int number = size++;
+
+			parents[number] = parent;
+			firstChildren[number] = nextSiblings[number] = lastChildren[number] = NONE;
+			if (parent != NONE) {
+				if (firstChildren[parent] == NONE) firstChildren[parent] = number;
+				else nextSiblings[lastChildren[parent]] = number;
+				lastChildren[parent] = number;
+			}
+
+			Integer index = numbers.get(name);
+			if (index == null) {
+				numbers.put(name, index = pool.size()); pool.add(name);
+			}
+			names[number] = index;
+
+			values[number] = length;
+			if (value != null) {
+				if (length + value.length() > buffer.length)
+					buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + value.length()));
+				value.getChars(0, value.length(), buffer, length);
+				length += value.length();
+			}
+			values[number + 1] = length; // the end of the value, until the next node is added
+			return number;
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package be.baur.sdt.xpath.function;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import org.jaxen.Context;
+import org.jaxen.Function;
+import org.jaxen.FunctionCallException;
+import org.jaxen.Navigator;
+import org.jaxen.function.StringFunction;
+
+/**
+ * An {@code Aggregate} holds the count, sum, minimum and maximum of the numeric
+ * values of a node-set, which are computed in a single pass over the set. The
+ * string value of each node is converted to a double as by the XPath
+ * <code>number()</code> function, but without creating a {@code Double} object
+ * for it. A value that is not a number makes the sum, minimum and maximum NaN,
+ * as it would for <code>sum()</code>.
+ * <p>
+ * The functions that return one of the aggregated values are the constants of
+ * {@link Operation}.
+ *
+ * @see StatisticsFunction
+ */
+public final class Aggregate {
+
+	final int count;
+	final double sum, min, max;
+
+	private Aggregate(int count, double sum, double min, double max) {
+		this.count = count; this.sum = sum; this.min = min; this.max = max;
+	}
+
+
+	/**
+	 * The functions that aggregate the numeric values of the nodes in a node-set,
+	 * which are converted as by the <code>number()</code> function, and return
+	 * one of the results. The result is NaN if the set is empty, or if any of the
+	 * values is not a number. For example, <code>sdt:max(/order/line/amount)</code>
+	 * returns the highest amount of an order.
+	 */
+	public enum Operation implements Function {
+
+		/** <code><i>double</i> sdt:avg( <i>node-set</i> )</code> returns the average of the values. */
+		AVG("avg", Aggregate::avg),
+
+		/** <code><i>double</i> sdt:max( <i>node-set</i> )</code> returns the maximum of the values. */
+		MAX("max", aggregate -> aggregate.max),
+
+		/** <code><i>double</i> sdt:min( <i>node-set</i> )</code> returns the minimum of the values. */
+		MIN("min", aggregate -> aggregate.min);
+
+		private final String name;
+		private final ToDoubleFunction<Aggregate> result;
+
+		private Operation(String name, ToDoubleFunction<Aggregate> result) {
+			this.name = name; this.result = result;
+		}
+
+
+		/**
+		 * Returns the name of this function.
+		 *
+		 * @return a function name
+		 */
+		public String getName() {
+			return name;
+		}
+
+
+		/**
+		 * Returns the result of this function for the values in a node-set.
+		 *
+		 * @param context the expression context
+		 * @param args    an argument list that contains one item
+		 * @return a double
+		 * @throws FunctionCallException if an inappropriate number of arguments is
+		 *                               supplied, or if evaluation failed
+		 */
+		@Override
+		@SuppressWarnings("rawtypes")
+		public Object call(Context context, List args) throws FunctionCallException
+		{
+			if (args.size() != 1)
+				throw new FunctionCallException(name + "() requires one argument.");
+
+			return result.applyAsDouble(Aggregate.of(name, args.get(0), context.getNavigator()));
+		}
+	}
+
+
+	/**
+	 * Returns the aggregate of the values in a node-set.
+	 *
+	 * @param fun the name of the calling function, used in the error message
+	 * @param set a node-set
+	 * @param nav the navigator used
+	 * @return an aggregate, not null
+	 * @throws FunctionCallException if the argument is not a node-set
+	 */
+	@SuppressWarnings("rawtypes")
+	static Aggregate of(String fun, Object set, Navigator nav) throws FunctionCallException {
+
+		if (! (set instanceof List))
+			throw new FunctionCallException(fun + "() expects a node-set.");
+
+		final List list = (List) set;
+		final int count = list.size();
+		if (count == 0) return new Aggregate(0, 0, Double.NaN, Double.NaN);
+
+		double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		boolean nan = false;
+		for (int i = 0; i < count; i++) {
+			Object item = list.get(i);
+			double d = (item instanceof Number) ? ((Number) item).doubleValue() : toDouble(StringFunction.evaluate(item, nav));
+			if (d != d) nan = true;
+			sum += d;
+			if (d < min) min = d;
+			if (d > max) max = d;
+		}
+		return nan ? new Aggregate(count, Double.NaN, Double.NaN, Double.NaN) : new Aggregate(count, sum, min, max);
+	}
+
+
+	/**
+	 * Returns the average of the values, or NaN if there are none.
+	 *
+	 * @return a double
+	 */
+	double avg() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+
+	/**
+	 * Converts a string to a double like the XPath <code>number()</code>
+	 * function: an optional minus sign followed by digits with an optional
+	 * decimal point, surrounded by optional whitespace. Anything else is NaN.
+	 *
+	 * @param s a string, not null
+	 * @return a double, may be NaN
+	 */
+	static double toDouble(String s) {
+
+		int from = 0, to = s.length();
+		while (from < to && isWhitespace(s.charAt(from))) from++;
+		while (to > from && isWhitespace(s.charAt(to - 1))) to--;
+
+		int i = from, digits = 0;
+		if (i < to && s.charAt(i) == '-') i++;
+		for (; i < to && isDigit(s.charAt(i)); i++) digits++;
+		if (i < to && s.charAt(i) == '.')
+			for (i++; i < to && isDigit(s.charAt(i)); i++) digits++;
+		if (i < to || digits == 0) return Double.NaN;
+
+		return Double.parseDouble(s.substring(from, to));
+	}
+
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+
+	/**
+	 * Returns a number as a string like the XPath <code>string()</code>
+	 * function, so without a fraction if it is an integer.
+	 *
+	 * @param d a double
+	 * @return a string
+	 */
+	static String toString(double d) {
+
+		if (d != d) return "NaN";
+		if (Double.isInfinite(d)) return d > 0 ? "Infinity" : "-Infinity";
+		if (d == Math.rint(d) && Math.abs(d) < 1e15) return Long.toString((long) d);
+		return new BigDecimal(Double.toString(d)).stripTrailingZeros().toPlainString();
+	}
+}
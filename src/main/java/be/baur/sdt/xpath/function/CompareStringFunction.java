@@ -1,8 +1,10 @@
 package be.baur.sdt.xpath.function;
 
 import java.text.Collator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.jaxen.Context;
 import org.jaxen.Function;
@@ -10,9 +12,12 @@ import org.jaxen.FunctionCallException;
 import org.jaxen.Navigator;
 import org.jaxen.function.StringFunction;
 
+import be.baur.sdt.xpath.BoundedCache;
+
 /**
  * <code><i>double</i> sdt:compare-string( <i>string</i>, <i>string</i> )</code><br>
- * <code><i>double</i> sdt:compare-string( <i>string</i>, <i>string</i>, <i>string language</i> )</code>
+ * <code><i>double</i> sdt:compare-string( <i>string</i>, <i>string</i>, <i>string language</i> )</code><br>
+ * <code><i>double</i> sdt:compare-string( <i>string</i>, <i>string</i>, <i>string language</i>, <i>string strength</i> )</code>
  * <p>
  * Compares two strings locale-sensitive. This function returns -1, 0 or 1,
  * depending on whether the first argument collates before, equal to, or after
@@ -23,17 +28,42 @@ import org.jaxen.function.StringFunction;
  * <code>sdt:compare-string('b', 'A')</code> returns <code>1.0</code>.
  * <p>
  * An optional third argument specifies the language tag (IETF BCP 47) to obtain
- * a collation strategy that best fits the tag:
+ * a collation strategy that best fits the tag; an empty string denotes the
+ * default locale:
  * <p>
  * <code>sdt:compare-string('Ångström', 'Zulu', 'sv')</code> returns
  * <code>1.0</code> in accordance with Swedish collation rules.
  * <p>
- * This function can be used as a comparator in a sort statement.
+ * An optional fourth argument specifies the collation strength, which is one of
+ * <code>primary</code>, <code>secondary</code>, <code>tertiary</code> (the
+ * default) or <code>identical</code>. At primary strength, differences in case
+ * and accents are usually ignored, at secondary strength only case:
+ * <p>
+ * <code>sdt:compare-string('Résumé', 'resume', '', 'primary')</code> returns
+ * <code>0.0</code>.
+ * <p>
+ * This function can be used as a comparator in a sort statement. Collators are
+ * expensive to create, so one is created per language and strength, and kept
+ * for reuse. Since a collator is not thread-safe, each thread uses its own copy.
  */
 public final class CompareStringFunction implements Function
 {
 	public static final String NAME = "compare-string";
 	
+	private static final int MAX_COLLATORS = 16; // per thread
+	
+	private static final BoundedCache<String, Collator> PROTOTYPES = 
+		new BoundedCache<String, Collator>(64); // shared, but never used to compare
+	
+	private static final ThreadLocal<Map<String, Collator>> COLLATORS = 
+		ThreadLocal.withInitial(() -> new LinkedHashMap<String, Collator>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Collator> eldest) {
+				return size() > MAX_COLLATORS;
+			}
+		});
+	
     /**
      * Create a new <code>CompareStringFunction</code> object.
      */
@@ -42,10 +72,11 @@ public final class CompareStringFunction implements Function
     
 	/**
 	 * Compares two arguments, returning -1, 0 or 1. An optional third argument
-	 * specifies a language tag to obtain a collator (other than the default).
+	 * specifies a language tag to obtain a collator (other than the default), and
+	 * an optional fourth argument the collation strength.
 	 *
 	 * @param context the expression context
-	 * @param args    an argument list that contains two or three items
+	 * @param args    an argument list that contains two to four items
 	 * @return a signum value
 	 * @throws FunctionCallException if an inappropriate number of arguments is
 	 *                               supplied, or if evaluation failed
@@ -55,13 +86,14 @@ public final class CompareStringFunction implements Function
 	public Object call(Context context, List args) throws FunctionCallException {
 
 		final int argc = args.size();
-		if (argc < 2 || argc > 3)
-			throw new FunctionCallException(NAME + "() requires two or three arguments.");
+		if (argc < 2 || argc > 4)
+			throw new FunctionCallException(NAME + "() requires two to four arguments.");
 
 		final Navigator nav = context.getNavigator();
 		
 		return evaluate(args.get(0), args.get(1), 
-			argc == 3 ? StringFunction.evaluate(args.get(2), nav) : "", nav);
+			argc > 2 ? StringFunction.evaluate(args.get(2), nav) : "", 
+			argc > 3 ? strength(StringFunction.evaluate(args.get(3), nav)) : Collator.TERTIARY, nav);
 	}
     
 
@@ -69,24 +101,57 @@ public final class CompareStringFunction implements Function
 	 * Compares two strings using a default or language dependent collator,
 	 * returning -1, 0 or 1.
 	 *
-	 * @param str1 the first string
-	 * @param obj2 the second string
-	 * @param lang a language tag, not null
-	 * @param nav  the navigator used
+	 * @param str1     the first string
+	 * @param obj2     the second string
+	 * @param lang     a language tag, not null
+	 * @param strength a collation strength
+	 * @param nav      the navigator used
 	 * @return a signum value
 	 */
-	private static Double evaluate(Object str1, Object obj2, String lang, Navigator nav) {
+	private static Double evaluate(Object str1, Object obj2, String lang, int strength, Navigator nav) {
 
 		final String s1 = StringFunction.evaluate(str1, nav);
 		final String s2 = StringFunction.evaluate(obj2, nav);
 
-		Collator c;
-		if (lang.isEmpty())
-			c = Collator.getInstance();
-		else
-			c = Collator.getInstance(Locale.forLanguageTag(lang));
+		return Math.signum((double) collator(lang, strength).compare(s1, s2));
+	}
+
+
+	/*
+	 * Returns the collation strength with the specified name.
+	 */
+	private static int strength(String name) throws FunctionCallException {
+
+		switch (name) {
+			case "primary": return Collator.PRIMARY;
+			case "secondary": return Collator.SECONDARY;
+			case "tertiary": return Collator.TERTIARY;
+			case "identical": return Collator.IDENTICAL;
+			default: throw new FunctionCallException(NAME + "() strength '" + name + "' is invalid.");
+		}
+	}
+
+
+	/*
+	 * Returns the collator of this thread for a language tag and strength. On
+	 * first use, it is cloned from a shared prototype, which is created once.
+	 */
+	private static Collator collator(String lang, int strength) {
+
+		final String tag = lang.isEmpty() ? Locale.getDefault().toLanguageTag() : lang;
+		final String key = tag + '/' + strength;
 
-		return Math.signum((double) c.compare(s1, s2));
+		Map<String, Collator> collators = COLLATORS.get();
+		Collator collator = collators.get(key);
+		if (collator == null) {
+			Collator prototype = PROTOTYPES.get(key, k -> {
+				Collator c = Collator.getInstance(Locale.forLanguageTag(tag));
+				c.setStrength(strength);
+				return c;
+			});
+			collators.put(key, collator = (Collator) prototype.clone());
+		}
+		return collator;
 	}
 
 
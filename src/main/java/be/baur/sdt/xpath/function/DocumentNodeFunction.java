@@ -10,6 +10,8 @@ import org.jaxen.Navigator;
 import be.baur.sda.DataNode;
 import be.baur.sda.Node;
 import be.baur.sdt.xpath.DocumentNavigator;
+import be.baur.sdt.xpath.FrozenNode;
+import be.baur.sdt.xpath.TinyNode;
 
 /**
  * <code><i>node</i> sdt:document-node( <i>node(set)</i> )</code><br>
@@ -67,8 +69,12 @@ public final class DocumentNodeFunction implements Function
 			if (first instanceof List)
 				return evaluate((List) first, nav);
 
+			if (first instanceof FrozenNode) // needs no copy
+				return DocumentNavigator.newDocumentNode((DataNode) first);
 			if (first instanceof DataNode)
 				return DocumentNavigator.newDocumentNode(((DataNode) first).copy());
+			if (first instanceof TinyNode)
+				return DocumentNavigator.newDocumentNode(((TinyNode) first).toDataNode());
 		}
 		// else
 		throw new FunctionCallException(NAME + "() expects a data node.");
@@ -0,0 +1,111 @@
+package be.baur.sdt.xpath.function;
+
+import static be.baur.sdt.xpath.SDTFunctionContext.FUNCTIONS_NS_URI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jaxen.Context;
+import org.jaxen.Function;
+import org.jaxen.FunctionCallException;
+import org.jaxen.Navigator;
+import org.jaxen.UnresolvableException;
+import org.jaxen.function.StringFunction;
+
+import be.baur.sda.Node;
+
+/**
+ * <code><i>node-set</i> sdt:key( <i>string name</i>, <i>object value</i> )</code><br>
+ * <p>
+ * Returns the nodes in the document of the context node that have the specified
+ * value for the key with the specified name, in document order. If the value is
+ * a node-set, the nodes are returned for the string value of each node in the
+ * set. A key is declared by a <code>key</code> statement in a transform, which
+ * makes it available as a hidden variable; the nodes are looked up in an index
+ * that is built for each document on first use.
+ * <p>
+ * For example, <code>sdt:key('customer-by-id', 42)</code>.
+ */
+public final class KeyFunction implements Function
+{
+	public static final String NAME = "key";
+
+	/** The prefix of the name of the hidden variable that holds a declared key. */
+	public static final String VARIABLE_PREFIX = "#key:";
+
+
+	/**
+	 * A declared key, which looks up the nodes in a document for a list of values.
+	 */
+	public interface Key {
+
+		/**
+		 * Returns the nodes in the specified document that have one of the specified
+		 * key values, in document order.
+		 *
+		 * @param document the document to search, not null
+		 * @param values   a list of values, not null
+		 * @return a list of nodes, not null
+		 * @throws FunctionCallException if the index could not be built
+		 */
+		List<?> select(Object document, List<String> values) throws FunctionCallException;
+	}
+
+
+	/**
+     * Create a new <code>KeyFunction</code> object.
+     */
+    public KeyFunction() {}
+
+
+	/**
+	 * Returns the nodes with the specified value for the specified key.
+	 *
+	 * @param context the expression context
+	 * @param args    an argument list that contains two items
+	 * @return a list of nodes
+	 * @throws FunctionCallException if an inappropriate number of arguments is
+	 *                               supplied, if the key is not declared, or if
+	 *                               evaluation failed
+	 */
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object call(Context context, List args) throws FunctionCallException {
+
+		final int argc = args.size();
+		if (argc != 2)
+			throw new FunctionCallException(NAME + "() requires two arguments.");
+
+		Navigator nav = context.getNavigator();
+		String name = StringFunction.evaluate(args.get(0), nav);
+
+		Object key;
+		try {
+			key = context.getVariableValue(FUNCTIONS_NS_URI, null, VARIABLE_PREFIX + name);
+		} catch (UnresolvableException e) {
+			key = null;
+		}
+		if (! (key instanceof Key))
+			throw new FunctionCallException(NAME + "() key '" + name + "' is not declared.");
+
+		List nodes = context.getNodeSet();
+		if (nodes.isEmpty()) return Collections.emptyList();
+		Object node = nodes.get(0);
+		Object document = nav.getDocumentNode(node);
+		if (document == null) // not part of a document, so use the top of the tree
+			document = (node instanceof Node) ? ((Node) node).root() : node;
+
+		Object value = args.get(1);
+		List<String> values;
+		if (value instanceof List) {
+			values = new ArrayList<String>(((List) value).size());
+			for (Object item : (List) value)
+				values.add(StringFunction.evaluate(item, nav));
+		}
+		else values = Collections.singletonList(StringFunction.evaluate(value, nav));
+
+		return ((Key) key).select(document, values);
+	}
+
+}
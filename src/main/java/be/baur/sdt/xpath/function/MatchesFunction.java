@@ -0,0 +1,68 @@
+package be.baur.sdt.xpath.function;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.jaxen.Context;
+import org.jaxen.Function;
+import org.jaxen.FunctionCallException;
+import org.jaxen.Navigator;
+import org.jaxen.function.StringFunction;
+
+/**
+ * <code><i>boolean</i> fn:matches( <i>string</i>, <i>string pattern</i> )</code><br>
+ * <code><i>boolean</i> fn:matches( <i>string</i>, <i>string pattern</i>, <i>string flags</i> )</code>
+ * <p>
+ * Returns true if the supplied string matches the regular expression, that is,
+ * if any substring matches it, unless the expression is anchored with ^ and $.
+ * The optional flags are any of <code>s</code> (dot-all mode), <code>m</code>
+ * (multi-line mode), <code>i</code> (case-insensitive mode), <code>x</code>
+ * (whitespace in the expression is ignored) and <code>q</code> (the expression
+ * is taken literally). For example:
+ * <p>
+ * <code>fn:matches('abracadabra', 'bra')</code> returns <code>true</code>.<br>
+ * <code>fn:matches('abracadabra', '^a.*a$')</code> returns <code>true</code>.<br>
+ * <code>fn:matches('abracadabra', '^bra')</code> returns <code>false</code>.<br>
+ * <code>fn:matches('Abracadabra', '^a', 'i')</code> returns <code>true</code>.
+ * <p>
+ * Regular expressions are those of {@link Pattern}, and compiled ones are
+ * cached, see {@link RegexCache}.
+ *
+ * @see <a href=
+ *      "https://www.w3.org/TR/xpath-functions/#func-matches">Section 5.6.2
+ *      of the XPath Specification</a>
+ */
+public final class MatchesFunction implements Function
+{
+	public static final String NAME = "matches";
+
+    /**
+     * Create a new <code>MatchesFunction</code> object.
+     */
+    public MatchesFunction() {}
+
+
+	/**
+	 * Returns true if the supplied string matches the regular expression.
+	 *
+	 * @param context the expression context
+	 * @param args    an argument list that contains two or three items
+	 * @return a boolean
+	 * @throws FunctionCallException if an inappropriate number of arguments is
+	 *                               supplied, or if evaluation failed
+	 */
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object call(Context context, List args) throws FunctionCallException
+	{
+		final int argc = args.size();
+		if (argc < 2 || argc > 3)
+			throw new FunctionCallException(NAME + "() requires two or three arguments.");
+
+		final Navigator nav = context.getNavigator();
+		final String flags = (argc == 3) ? StringFunction.evaluate(args.get(2), nav) : "";
+		Pattern pattern = RegexCache.compile(NAME, StringFunction.evaluate(args.get(1), nav), flags);
+
+		return pattern.matcher(StringFunction.evaluate(args.get(0), nav)).find() ? Boolean.TRUE : Boolean.FALSE;
+	}
+}
@@ -12,11 +12,22 @@ import be.baur.sda.DataNode;
 import be.baur.sda.SDA;
 import be.baur.sda.io.ParseException;
 import be.baur.sda.io.SDAParser;
+import be.baur.sdt.xpath.BoundedCache;
+import be.baur.sdt.xpath.FrozenNode;
 
 /**
  * <code><i>node</i> sdt:parse-sda( <i>string</i> )</code><br>
  * <p>
  * Parses a string in SDA format and returns a data node.
+ * <p>
+ * Results can be memoized, so that identical strings (such as a payload that
+ * is embedded in every record of a document) are parsed only once. This is
+ * disabled by default, and enabled by setting the maximum number of cached
+ * results with the system property {@code sdt.parse-sda.cache.size}, or with
+ * {@link #getCache()}. Strings longer than {@link #MAX_CACHED_LENGTH} are never
+ * cached. A cached result is a shared {@link FrozenNode}, which cannot be
+ * modified, and the root of a document, so that its parent axis selects the
+ * document node. Without the cache, the result is a new, parentless data node.
  * 
  * @see SDAParser
  */
@@ -24,6 +35,15 @@ public final class ParseSDAFunction implements Function
 {
 	public static final String NAME = "parse-sda";
 	
+	/** The system property that sets the maximum number of cached results. */
+	public static final String CACHE_SIZE_PROPERTY = "sdt.parse-sda.cache.size";
+	
+	/** The maximum length of a string for its result to be cached. */
+	public static final int MAX_CACHED_LENGTH = 1 << 16;
+	
+	private static final BoundedCache<String, FrozenNode> CACHE = 
+		new BoundedCache<String, FrozenNode>(Math.max(Integer.getInteger(CACHE_SIZE_PROPERTY, 0), 0));
+	
 	/**
      * Create a new <code>ParseSDAFunction</code> object.
      */
@@ -52,7 +72,8 @@ public final class ParseSDAFunction implements Function
     
 
 	/**
-	 * Parses a string in SDA format and returns a data node.
+	 * Parses a string in SDA format and returns a data node, which is obtained
+	 * from the cache if possible.
 	 *
 	 * @param str a string in SDA format
 	 * @return a data node
@@ -60,11 +81,32 @@ public final class ParseSDAFunction implements Function
 	 */
 	private static DataNode evaluate(String str) throws FunctionCallException {
 
+		final boolean cacheable = CACHE.getMaxSize() > 0 && str.length() <= MAX_CACHED_LENGTH;
+		if (cacheable) {
+			FrozenNode node = CACHE.get(str);
+			if (node != null) return node;
+		}
+
 		try {
-			return SDA.parse(str);
+			DataNode node = SDA.parse(str);
+			if (! cacheable) return node;
+			FrozenNode frozen = FrozenNode.freeze(node);
+			CACHE.put(str, frozen);
+			return frozen;
 		} catch (ParseException | IOException e) {
 			throw new FunctionCallException(e);
 		}
 	}
+
+
+	/**
+	 * Returns the cache of parse results, which can be used to enable, disable or
+	 * inspect it.
+	 *
+	 * @return a cache, keyed by SDA string
+	 */
+	public static BoundedCache<String, FrozenNode> getCache() {
+		return CACHE;
+	}
     
 }
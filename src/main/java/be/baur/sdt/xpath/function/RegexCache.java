@@ -0,0 +1,82 @@
+package be.baur.sdt.xpath.function;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.jaxen.FunctionCallException;
+
+import be.baur.sdt.xpath.BoundedCache;
+
+/**
+ * {@code RegexCache} compiles the regular expressions of <code>tokenize()</code>,
+ * <code>matches()</code> and <code>replace()</code>, and caches the compiled
+ * patterns, which are immutable and can therefore be shared. The maximum
+ * number of cached patterns is 256 by default, and can be set with the system
+ * property {@code sdt.regex.cache.size}; 0 disables caching.
+ *
+ * @see TokenizeFunction
+ * @see MatchesFunction
+ * @see ReplaceFunction
+ */
+final class RegexCache {
+
+	/** The system property that sets the maximum number of cached patterns. */
+	static final String CACHE_SIZE_PROPERTY = "sdt.regex.cache.size";
+
+	private static final BoundedCache<String, Pattern> PATTERNS =
+		new BoundedCache<String, Pattern>(Math.max(Integer.getInteger(CACHE_SIZE_PROPERTY, 256), 0));
+
+	private RegexCache() {} // cannot construct this
+
+
+	/**
+	 * Returns the compiled form of a regular expression, which is obtained from
+	 * the cache if possible.
+	 *
+	 * @param fun the name of the calling function, used in the error message
+	 * @param rex a regular expression, not null
+	 * @return a pattern
+	 * @throws FunctionCallException if the regular expression is invalid
+	 */
+	static Pattern compile(String fun, String rex) throws FunctionCallException {
+		try {
+			return PATTERNS.get(rex, Pattern::compile);
+		} catch (PatternSyntaxException e) {
+			throw new FunctionCallException(fun + "() pattern '" + rex + "' is invalid.", e);
+		}
+	}
+
+
+	/**
+	 * Returns the compiled form of a regular expression with XPath flags, which
+	 * are translated into embedded flags so that the expression can be cached
+	 * like any other.
+	 *
+	 * @param fun   the name of the calling function, used in error messages
+	 * @param rex   a regular expression, not null
+	 * @param flags zero or more of the flags s, m, i, x and q
+	 * @return a pattern
+	 * @throws FunctionCallException if the expression or the flags are invalid
+	 */
+	static Pattern compile(String fun, String rex, String flags) throws FunctionCallException {
+
+		if (flags.isEmpty())
+			return compile(fun, rex);
+
+		StringBuilder embedded = new StringBuilder("(?");
+		boolean literal = false;
+		for (int i = 0; i < flags.length(); i++) {
+			switch (flags.charAt(i)) {
+				case 's': embedded.append('s'); break;
+				case 'm': embedded.append('m'); break;
+				case 'i': embedded.append("iu"); break;
+				case 'x': embedded.append('x'); break;
+				case 'q': literal = true; break;
+				default: throw new FunctionCallException(fun + "() flags '" + flags + "' are invalid.");
+			}
+		}
+		if (literal) rex = Pattern.quote(rex);
+		return compile(fun, embedded.length() == 2 ? rex : embedded.append(')').append(rex).toString());
+	}
+
+}
@@ -12,6 +12,7 @@ import org.jaxen.function.BooleanFunction;
 import be.baur.sda.DataNode;
 import be.baur.sda.SDA;
 import be.baur.sda.io.SDAFormatter;
+import be.baur.sdt.xpath.TinyNode;
 
 /**
  * <code><i>string</i> sdt:render-sda( <i>node(set)</i> )</code><br>
@@ -77,6 +78,8 @@ public final class RenderSDAFunction implements Function
 			if (first instanceof List)
 				return evaluate((List) first, pretty, nav);
 
+			if (first instanceof TinyNode)
+				first = ((TinyNode) first).toDataNode();
 			if (first instanceof DataNode) {
 				if (pretty) {
 					try {
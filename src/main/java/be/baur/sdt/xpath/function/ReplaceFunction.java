@@ -0,0 +1,78 @@
+package be.baur.sdt.xpath.function;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jaxen.Context;
+import org.jaxen.Function;
+import org.jaxen.FunctionCallException;
+import org.jaxen.Navigator;
+import org.jaxen.function.StringFunction;
+
+/**
+ * <code><i>string</i> fn:replace( <i>string</i>, <i>string pattern</i>, <i>string replacement</i> )</code><br>
+ * <code><i>string</i> fn:replace( <i>string</i>, <i>string pattern</i>, <i>string replacement</i>, <i>string flags</i> )</code>
+ * <p>
+ * Returns a string in which every substring that matches the regular
+ * expression is replaced. In the replacement, <code>$n</code> refers to the
+ * n-th captured group, and a backslash escapes the next character. The flags
+ * are those of <code>matches()</code>; with the <code>q</code> flag, the
+ * replacement is also taken literally. The expression must not match a zero
+ * length string. For example:
+ * <p>
+ * <code>fn:replace('abracadabra', 'bra', '*')</code> returns <code>a*cada*</code>.<br>
+ * <code>fn:replace('abracadabra', 'a(.)', 'a$1$1')</code> returns <code>abbraccaddabbra</code>.<br>
+ * <code>fn:replace('a.b.c', '.', '-', 'q')</code> returns <code>a-b-c</code>.
+ * <p>
+ * Compiled regular expressions are cached, see {@link RegexCache}.
+ *
+ * @see <a href=
+ *      "https://www.w3.org/TR/xpath-functions/#func-replace">Section 5.6.3
+ *      of the XPath Specification</a>
+ */
+public final class ReplaceFunction implements Function
+{
+	public static final String NAME = "replace";
+
+    /**
+     * Create a new <code>ReplaceFunction</code> object.
+     */
+    public ReplaceFunction() {}
+
+
+	/**
+	 * Returns a string with all matches of a regular expression replaced.
+	 *
+	 * @param context the expression context
+	 * @param args    an argument list that contains three or four items
+	 * @return a string
+	 * @throws FunctionCallException if an inappropriate number of arguments is
+	 *                               supplied, or if evaluation failed
+	 */
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object call(Context context, List args) throws FunctionCallException
+	{
+		final int argc = args.size();
+		if (argc < 3 || argc > 4)
+			throw new FunctionCallException(NAME + "() requires three or four arguments.");
+
+		final Navigator nav = context.getNavigator();
+		final String flags = (argc == 4) ? StringFunction.evaluate(args.get(3), nav) : "";
+		final String rex = StringFunction.evaluate(args.get(1), nav);
+		Pattern pattern = RegexCache.compile(NAME, rex, flags);
+		if (pattern.matcher("").matches())
+			throw new FunctionCallException(NAME + "() pattern '" + rex + "' matches a zero length string.");
+
+		String replacement = StringFunction.evaluate(args.get(2), nav);
+		if (flags.indexOf('q') >= 0)
+			replacement = Matcher.quoteReplacement(replacement);
+
+		try {
+			return pattern.matcher(StringFunction.evaluate(args.get(0), nav)).replaceAll(replacement);
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new FunctionCallException(NAME + "() replacement '" + replacement + "' is invalid.", e);
+		}
+	}
+}
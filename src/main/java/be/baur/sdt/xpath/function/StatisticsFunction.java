@@ -0,0 +1,64 @@
+package be.baur.sdt.xpath.function;
+
+import java.util.List;
+
+import org.jaxen.Context;
+import org.jaxen.Function;
+import org.jaxen.FunctionCallException;
+
+import be.baur.sda.DataNode;
+
+/**
+ * <code><i>node</i> sdt:statistics( <i>node-set</i> )</code><br>
+ * <p>
+ * Returns a data node with the count, sum, minimum, maximum and average of the
+ * numeric values of the nodes in a node-set, which are computed in a single
+ * pass. For example, <code>sdt:statistics(/order/line/amount)</code> returns
+ * <p>
+ * <code>statistics { count "3" sum "60" min "10" max "30" avg "20" }</code>
+ * <p>
+ * so that <code>$stats/avg</code> and <code>$stats/max</code> can be selected
+ * from a variable without going over the node-set again. Values are converted
+ * and formatted as by the <code>number()</code> and <code>string()</code>
+ * functions. The sum, minimum and maximum are NaN if any value is not a number,
+ * and the minimum, maximum and average are NaN if the set is empty.
+ *
+ * @see Aggregate.Operation
+ */
+public final class StatisticsFunction implements Function
+{
+	public static final String NAME = "statistics";
+
+    /**
+     * Create a new <code>StatisticsFunction</code> object.
+     */
+    public StatisticsFunction() {}
+
+
+	/**
+	 * Returns a data node with statistics of the values in a node-set.
+	 *
+	 * @param context the expression context
+	 * @param args    an argument list that contains one item
+	 * @return a data node
+	 * @throws FunctionCallException if an inappropriate number of arguments is
+	 *                               supplied, or if evaluation failed
+	 */
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object call(Context context, List args) throws FunctionCallException
+	{
+		if (args.size() != 1)
+			throw new FunctionCallException(NAME + "() requires one argument.");
+
+		Aggregate aggregate = Aggregate.of(NAME, args.get(0), context.getNavigator());
+
+		DataNode node = new DataNode(NAME);
+		node.add(new DataNode("count", Integer.toString(aggregate.count)));
+		node.add(new DataNode("sum", Aggregate.toString(aggregate.sum)));
+		node.add(new DataNode("min", Aggregate.toString(aggregate.min)));
+		node.add(new DataNode("max", Aggregate.toString(aggregate.max)));
+		node.add(new DataNode("avg", Aggregate.toString(aggregate.avg())));
+		return node;
+	}
+}
@@ -1,8 +1,9 @@
 package be.baur.sdt.xpath.function;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.jaxen.Context;
 import org.jaxen.Function;
@@ -32,10 +33,17 @@ import org.jaxen.function.StringFunction;
  * <code>(127, 0, 0, 1, 80)</code>.<br>
  * <code>sdt:tokenize('a; b; ; c; ', '; ', true())</code> returns
  * <code>("a","b","", "c", "")</code>.
+ * <p>
+ * Compiled regular expressions are cached, and shared with <code>matches()</code>
+ * and <code>replace()</code>, see {@link RegexCache}.
+ * 
+ * @see Pattern
  */
 public final class TokenizeFunction implements Function
 {
 	public static final String NAME = "tokenize";
+
+	private static final String METACHARACTERS = ".$|()[{^?*+\\";
 	
     /**
      * Create a new <code>TokenizeFunction</code> object.
@@ -81,15 +89,32 @@ public final class TokenizeFunction implements Function
 	 * @param rex        the delimiter regular expression
 	 * @param allowEmpty whether to retain empty strings in the result
 	 * @return a list of strings
+	 * @throws FunctionCallException if the regular expression is invalid
 	 */
-	private static List<String> evaluate(String str, String rex, boolean allowEmpty) {
+	private static List<String> evaluate(String str, String rex, boolean allowEmpty) throws FunctionCallException {
 
-		List<String> tokens = Arrays.asList(str.split(rex, allowEmpty ? -1 : 0));
+		List<String> tokens = new ArrayList<String>();
+		int start = 0;
 
-		if (!allowEmpty) {
-			tokens = new ArrayList<String>(tokens); // make tokens mutable
-			tokens.removeIf(s -> s.isEmpty()); // to remove the empty ones
+		if (rex.length() == 1 && METACHARACTERS.indexOf(rex.charAt(0)) < 0) {
+			// a literal delimiter, such as a space, needs no regular expression
+			for (int end; (end = str.indexOf(rex.charAt(0), start)) >= 0; start = end + 1)
+				add(tokens, str, start, end, allowEmpty);
+		}
+		else {
+			Matcher m = RegexCache.compile(NAME, rex).matcher(str);
+			while (m.find()) {
+				if (m.end() == 0) continue; // no leading empty token for a zero-width match, like String.split()
+				add(tokens, str, start, m.start(), allowEmpty);
+				start = m.end();
+			}
 		}
+		add(tokens, str, start, str.length(), allowEmpty);
 		return tokens;
 	}
+
+
+	private static void add(List<String> tokens, String str, int start, int end, boolean allowEmpty) {
+		if (allowEmpty || end > start) tokens.add(str.substring(start, end));
+	}
 }
@@ -90,7 +90,8 @@ public final class DateTimeFunction implements Function
 
 	/**
 	 * Returns a local or zoned date-time object parsed from a string in ISO-like
-	 * format, optionally including a time zone id.
+	 * format, optionally including a time zone id. Common forms are parsed by
+	 * {@link IsoDateTime}, others by the formatter.
 	 * 
 	 * @param dtms a string representing a date-time
 	 * @return a local or zoned date-time, not null
@@ -100,13 +101,15 @@ public final class DateTimeFunction implements Function
 	 */
 	public static TemporalAccessor parse(String dtms) {
 
-		return ParseDateTimeFunction.parse(dtms, DateTimeFormatter.ISO_DATE_TIME);
+		TemporalAccessor dtm = IsoDateTime.parse(dtms);
+		return dtm != null ? dtm : ParseDateTimeFunction.parse(dtms, DateTimeFormatter.ISO_DATE_TIME);
 	}
 
 
 	/**
 	 * Returns a string representation of a temporal object in ISO-like format
-	 * including the time zone id (if present).
+	 * including the time zone id (if present). Common forms are formatted by
+	 * {@link IsoDateTime}, others by the formatter.
 	 * 
 	 * @param dtm a local or zoned date-time, not null
 	 * @return a formatted date-time string
@@ -116,7 +119,8 @@ public final class DateTimeFunction implements Function
 	 */
 	public static String format(TemporalAccessor dtm) {
 
-		return FormatDateTimeFunction.format(dtm, DateTimeFormatter.ISO_DATE_TIME);
+		String dtms = IsoDateTime.format(dtm);
+		return dtms != null ? dtms : FormatDateTimeFunction.format(dtm, DateTimeFormatter.ISO_DATE_TIME);
 	}
 
 }
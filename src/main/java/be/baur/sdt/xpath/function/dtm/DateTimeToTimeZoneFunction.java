@@ -3,9 +3,12 @@ package be.baur.sdt.xpath.function.dtm;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.temporal.TemporalAccessor;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jaxen.Context;
 import org.jaxen.Function;
@@ -36,6 +39,11 @@ import org.jaxen.function.StringFunction;
  * returns <code>2025-10-26T02:00:00+02:00</code>.<br>
  * <code>sdt:dateTime-to-timezone('2025-10-26T03:00:00', 'Europe/Amsterdam')</code>
  * returns <code>2025-10-26T03:00:00+01:00</code>.<br>
+ * <p>
+ * Resolved time zones are cached, so that converting many date-times into a
+ * few zones does not look up the same zone over and over. The maximum number
+ * of cached zones is 1024 by default, and can be set with the system property
+ * {@code sdt.timezone.cache.size}.
  * 
  * @see ZoneId
  */
@@ -43,6 +51,12 @@ public final class DateTimeToTimeZoneFunction implements Function
 {
 	public static final String NAME = "dateTime-to-timezone";
 
+	/** The system property that sets the maximum number of cached time zones. */
+	public static final String CACHE_SIZE_PROPERTY = "sdt.timezone.cache.size";
+
+	private static final int MAX_ZONES = Math.max(Integer.getInteger(CACHE_SIZE_PROPERTY, 1024), 0);
+	private static final ConcurrentMap<String, ZoneId> ZONES = new ConcurrentHashMap<String, ZoneId>();
+
     /**
      * Create a new <code>DateTimeToTimeZoneFunction</code> object.
      */
@@ -85,7 +99,7 @@ public final class DateTimeToTimeZoneFunction implements Function
 		String zone = StringFunction.evaluate(tmz, nav);
 		ZoneId zoneId;
 		try {
-			zoneId = ZoneId.of(zone);
+			zoneId = zoneOf(zone);
 		} catch (Exception e) {
 			throw new FunctionCallException(NAME + "() time zone '" + zone + "' is invalid.", e);
 		}
@@ -99,19 +113,50 @@ public final class DateTimeToTimeZoneFunction implements Function
 	
 	
 	/**
-	 * Create a date-time adjusted to the supplied time zone or offset.
+	 * Returns the zone id for a time zone or offset, which is obtained from the
+	 * cache if possible. Once the cache is full, zones that are not in it are
+	 * resolved on every call.
+	 * 
+	 * @param zone a time zone or offset, not null
+	 * @return a zone id, as returned by {@link ZoneId#of(String)}
+	 * @throws DateTimeException if the zone is invalid or unknown
+	 */
+	static ZoneId zoneOf(String zone) {
+
+		ZoneId zid = ZONES.get(zone);
+		if (zid == null) {
+			zid = ZoneId.of(zone); // invalid zones are not cached
+			if (ZONES.size() < MAX_ZONES) ZONES.putIfAbsent(zone, zid);
+		}
+		return zid;
+	}
+
+
+	/**
+	 * Create a date-time adjusted to the supplied time zone or offset. A zoned
+	 * date-time that is already in that zone is returned as is, and conversion
+	 * to a fixed offset bypasses the zone rules.
 	 * 
 	 * @param dtm a date-time
 	 * @param zid a zone id
 	 * @return a zoned date-time
 	 * @throws DateTimeException if conversion to the target zone failed
 	 */
-    static ZonedDateTime evaluate(TemporalAccessor dtm, ZoneId zid) {
+	static ZonedDateTime evaluate(TemporalAccessor dtm, ZoneId zid) {
 
 		if (dtm instanceof LocalDateTime)
 			return ((LocalDateTime) dtm).atZone(zid);
-		else
-			return Instant.from(dtm).atZone(zid);
+
+		if (dtm instanceof ZonedDateTime && ((ZonedDateTime) dtm).getZone().equals(zid))
+			return (ZonedDateTime) dtm; // the same instant in the same zone
+
+		Instant instant = Instant.from(dtm);
+		if (zid instanceof ZoneOffset) {
+			ZoneOffset offset = (ZoneOffset) zid;
+			LocalDateTime local = LocalDateTime.ofEpochSecond(instant.getEpochSecond(), instant.getNano(), offset);
+			return ZonedDateTime.ofLocal(local, offset, null);
+		}
+		return instant.atZone(zid);
 	}
 
 }
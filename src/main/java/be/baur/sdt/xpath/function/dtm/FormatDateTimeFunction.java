@@ -14,6 +14,8 @@ import org.jaxen.FunctionCallException;
 import org.jaxen.Navigator;
 import org.jaxen.function.StringFunction;
 
+import be.baur.sdt.xpath.BoundedCache;
+
 /**
  * <code><i>string</i> sdt:format-dateTime( <i>date-time</i>, <i>pattern</i> )</code><br>
  * <p>
@@ -26,6 +28,11 @@ import org.jaxen.function.StringFunction;
  * returns <code>1968/02/28 12:00</code>.<br>
  * <code>sdt:format-dateTime(sdt:millis-to-dateTime(0),'yyyyMMddHHmmss')</code>
  * returns <code>19700101000000</code>.
+ * <p>
+ * Compiled patterns are cached, and shared with <code>parse-dateTime()</code>.
+ * The maximum number of cached patterns is 256 by default, and can be set with
+ * the system property {@code sdt.dateTime.pattern.cache.size}, or with
+ * {@link #getPatternCache()}.
  * 
  * @see DateTimeFormatter
  */
@@ -33,6 +40,12 @@ public final class FormatDateTimeFunction implements Function
 {
 	public static final String NAME = "format-dateTime";
 	
+	/** The system property that sets the maximum number of cached patterns. */
+	public static final String CACHE_SIZE_PROPERTY = "sdt.dateTime.pattern.cache.size";
+	
+	private static final BoundedCache<String, DateTimeFormatter> PATTERNS = 
+		new BoundedCache<String, DateTimeFormatter>(Math.max(Integer.getInteger(CACHE_SIZE_PROPERTY, 256), 0));
+	
     /**
      * Create a new <code>FormatDateTimeFunction</code> object.
      */
@@ -77,7 +90,7 @@ public final class FormatDateTimeFunction implements Function
 		
 			DateTimeFormatter dtf;
 			try {
-				dtf = DateTimeFormatter.ofPattern(fmt);
+				dtf = ofPattern(fmt);
 			} catch (Exception e) {
 				throw new FunctionCallException(NAME + "() pattern '" + fmt + "' is invalid.", e);
 			}
@@ -106,6 +119,30 @@ public final class FormatDateTimeFunction implements Function
 	}
 
 	
+	/**
+	 * Returns a formatter for the specified pattern, which is obtained from the
+	 * cache if possible. Formatters are immutable, so they can be shared.
+	 * 
+	 * @param pattern a formatting pattern, not null
+	 * @return a formatter
+	 * @throws IllegalArgumentException if the pattern is invalid
+	 */
+	static DateTimeFormatter ofPattern(String pattern) {
+		return PATTERNS.get(pattern, DateTimeFormatter::ofPattern);
+	}
+
+
+	/**
+	 * Returns the cache of compiled formatting patterns, which can be used to
+	 * resize, disable or inspect it.
+	 *
+	 * @return a cache, keyed by pattern
+	 */
+	public static BoundedCache<String, DateTimeFormatter> getPatternCache() {
+		return PATTERNS;
+	}
+
+	
 	/*
 	 * Private helper that renders a temporal object as a string, using a formatter,
 	 * or in ISO-8601 format if null is supplied. Supported objects are
@@ -25,6 +25,8 @@ import org.jaxen.function.StringFunction;
  * <p>
  * <code>sdt:parse-dateTime('1968/02/28 12:00','yyyy/MM/dd HH:mm')</code>
  * returns <code>1968-02-28T12:00:00</code>.
+ * <p>
+ * Compiled patterns are cached, see {@link FormatDateTimeFunction}.
  * 
  * @see DateTimeFormatter
  */
@@ -75,7 +77,7 @@ public final class ParseDateTimeFunction implements Function
 		try {
 			DateTimeFormatter dtf;
 			try {
-				dtf = DateTimeFormatter.ofPattern(fmts);
+				dtf = FormatDateTimeFunction.ofPattern(fmts);
 			}
 			catch (Exception e) {
 				throw new FunctionCallException(NAME + "() pattern is invalid.", e);
@@ -0,0 +1,150 @@
+package test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jaxen.Navigator;
+import org.jaxen.XPath;
+import org.jaxen.util.DescendantAxisIterator;
+
+import be.baur.sda.DataNode;
+import be.baur.sda.Node;
+import be.baur.sdt.xpath.DocumentNavigator;
+import be.baur.sdt.xpath.FrozenNode;
+
+/**
+ * Compares the time taken to traverse the descendant axis of deep and wide
+ * trees with the navigator's own iterator and Jaxen's generic one, and the
+ * time taken by an XPath expression that uses the axis. It also times the
+ * child, parent and sibling axes of every node in the wide tree. Each timing
+ * reports the bytes allocated per iteration, as counted by the JVM for the
+ * current thread. Usage:
+ *
+ * <pre>
+ * PerfAxes [depth] [width] [runs]
+ * </pre>
+ *
+ * The deep tree is a chain of nodes of the specified depth with a leaf at every
+ * level, the wide tree has the specified number of parents with ten children
+ * each. Both are traversed as regular and as frozen trees.
+ */
+public final class PerfAxes {
+
+	public static void main(String[] args) throws Exception {
+
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 250;
+		int width = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		DataNode deep = new DataNode("deep"), node = deep;
+		for (int i = 0; i < depth; i++) {
+			node.add(new DataNode("leaf", String.valueOf(i)));
+			DataNode child = new DataNode("level");
+			node.add(child); node = child;
+		}
+		DataNode wide = new DataNode("wide");
+		for (int i = 0; i < width; i++) {
+			DataNode parent = new DataNode("parent");
+			for (int j = 0; j < 10; j++) parent.add(new DataNode("leaf", String.valueOf(j)));
+			wide.add(parent);
+		}
+
+		test("deep", deep, Math.max(1, 2000000 / depth), runs);
+		test("deep frozen", FrozenNode.freeze(deep), Math.max(1, 2000000 / depth), runs);
+		test("wide", wide, 5, runs);
+		test("wide frozen", FrozenNode.freeze(wide), 5, runs);
+		axes("wide", wide, 5, runs);
+		axes("wide frozen", FrozenNode.freeze(wide), 5, runs);
+	}
+
+
+	private static void test(String name, DataNode root, int iterations, int runs) throws Exception {
+
+		Navigator nav = DocumentNavigator.getInstance();
+		XPath xpath = nav.parseXPath("count(descendant::leaf[. = '0'])");
+
+		System.out.println(name + ":");
+		time("  navigator", runs, iterations, () -> count(nav.getDescendantAxisIterator(root)));
+		time("  jaxen    ", runs, iterations, () -> count(new DescendantAxisIterator(root, nav)));
+		time("  xpath    ", runs, iterations, () -> xpath.numberValueOf(root).intValue());
+	}
+
+
+	/*
+	 * Times the child axis of every parent, and the parent and sibling axes of
+	 * every leaf in a wide tree.
+	 */
+	static void axes(String name, DataNode root, int iterations, int runs) throws Exception {
+
+		Navigator nav = DocumentNavigator.getInstance();
+		List<Node> parents = root.nodes();
+
+		System.out.println(name + " axes:");
+		time("  child            ", runs, iterations, () -> {
+			int count = 0;
+			for (Node parent : parents) count += count(nav.getChildAxisIterator(parent));
+			return count;
+		});
+		time("  parent           ", runs, iterations, () -> {
+			int count = 0;
+			for (Node parent : parents)
+				for (Node leaf : parent.nodes()) count += count(nav.getParentAxisIterator(leaf));
+			return count;
+		});
+		time("  following-sibling", runs, iterations, () -> {
+			int count = 0;
+			for (Node parent : parents)
+				for (Node leaf : parent.nodes()) count += count(nav.getFollowingSiblingAxisIterator(leaf));
+			return count;
+		});
+		time("  preceding-sibling", runs, iterations, () -> {
+			int count = 0;
+			for (Node parent : parents)
+				for (Node leaf : parent.nodes()) count += count(nav.getPrecedingSiblingAxisIterator(leaf));
+			return count;
+		});
+	}
+
+
+	interface Run {
+		int run() throws Exception;
+	}
+
+
+	private static void time(String name, int runs, int iterations, Run run) throws Exception {
+
+		System.out.print(name + ":");
+		long best = Long.MAX_VALUE, allocated = allocatedBytes(); int result = 0;
+		for (int r = 0; r < runs; r++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) result = run.run();
+			long duration = System.nanoTime() - start;
+			best = Math.min(best, duration);
+			System.out.print(" " + duration / 1000000 + "ms");
+		}
+		allocated = allocatedBytes() - allocated;
+		System.out.println(String.format(" - best %.1f ns/iteration, %d bytes/iteration (%d nodes)",
+			(double) best / iterations, allocated / ((long) runs * iterations), result));
+	}
+
+
+	/*
+	 * Returns the number of bytes allocated by the current thread, or 0 if the JVM
+	 * does not count them.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (! (bean instanceof com.sun.management.ThreadMXBean)) return 0;
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+
+	@SuppressWarnings("rawtypes")
+	private static int count(Iterator iterator) {
+		int count = 0;
+		while (iterator.hasNext()) { iterator.next(); ++count; }
+		return count;
+	}
+
+}
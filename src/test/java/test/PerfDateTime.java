@@ -0,0 +1,116 @@
+package test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+
+import org.jaxen.XPath;
+
+import be.baur.sda.DataNode;
+import be.baur.sdt.xpath.SDAXPath;
+import be.baur.sdt.xpath.function.dtm.DateTimeFunction;
+
+/**
+ * Compares the time taken to parse and format ISO date-times, and to convert
+ * them to other time zones, by the date-time functions and by the JDK, such as
+ * {@link DateTimeFormatter#ISO_DATE_TIME} and {@link ZoneId#of(String)}. Usage:
+ *
+ * <pre>
+ * PerfDateTime [iterations] [runs]
+ * </pre>
+ *
+ * Each iteration parses, formats or converts a local, an offset and a zoned
+ * date-time; conversions are to a region, to UTC and to a fixed offset. The
+ * functions convert by evaluating <code>sdt:dateTime-to-timezone()</code>,
+ * which also parses and formats the date-time.
+ */
+public final class PerfDateTime {
+
+	private static final String[] INPUT = {
+		"2025-03-30T01:15:30", "2025-03-30T01:15:30.250+01:00", "2025-03-30T01:15:30Z[Europe/Amsterdam]"
+	};
+	private static final String[] ZONES = { "Europe/Amsterdam", "UTC", "-05:30" };
+
+	public static void main(String[] args) throws Exception {
+
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		TemporalAccessor[] parsed = new TemporalAccessor[INPUT.length];
+		for (int i = 0; i < INPUT.length; i++)
+			parsed[i] = DateTimeFunction.parse(INPUT[i]);
+
+		XPath[][] convert = new XPath[INPUT.length][ZONES.length];
+		for (int i = 0; i < INPUT.length; i++)
+			for (int j = 0; j < ZONES.length; j++)
+				convert[i][j] = SDAXPath.withSDTSupport("sdt:dateTime-to-timezone('" + INPUT[i] + "','" + ZONES[j] + "')");
+		DataNode context = new DataNode("context");
+
+		System.out.println("parse:");
+		time("  formatter", runs, iterations, () -> {
+			int n = 0;
+			for (String dtms : INPUT)
+				n += DateTimeFormatter.ISO_DATE_TIME.parseBest(dtms, ZonedDateTime::from, LocalDateTime::from).hashCode();
+			return n;
+		});
+		time("  functions", runs, iterations, () -> {
+			int n = 0;
+			for (String dtms : INPUT) n += DateTimeFunction.parse(dtms).hashCode();
+			return n;
+		});
+
+		System.out.println("format:");
+		time("  formatter", runs, iterations, () -> {
+			int n = 0;
+			for (TemporalAccessor dtm : parsed) n += DateTimeFormatter.ISO_DATE_TIME.format(dtm).length();
+			return n;
+		});
+		time("  functions", runs, iterations, () -> {
+			int n = 0;
+			for (TemporalAccessor dtm : parsed) n += DateTimeFunction.format(dtm).length();
+			return n;
+		});
+
+		System.out.println("convert:");
+		time("  jdk", runs, iterations, () -> {
+			int n = 0;
+			for (TemporalAccessor dtm : parsed)
+				for (String zone : ZONES) {
+					ZoneId zid = ZoneId.of(zone);
+					n += (dtm instanceof LocalDateTime ? ((LocalDateTime) dtm).atZone(zid) : Instant.from(dtm).atZone(zid)).getHour();
+				}
+			return n;
+		});
+		time("  functions", runs, iterations, () -> {
+			int n = 0;
+			for (XPath[] xpaths : convert)
+				for (XPath xpath : xpaths)
+					n += ((String) xpath.evaluate(context)).length();
+			return n;
+		});
+	}
+
+
+	interface Run {
+		int run() throws Exception;
+	}
+
+
+	private static void time(String name, int runs, int iterations, Run run) throws Exception {
+
+		System.out.print(name + ":");
+		long best = Long.MAX_VALUE; int result = 0;
+		for (int r = 0; r < runs; r++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) result += run.run();
+			long duration = System.nanoTime() - start;
+			best = Math.min(best, duration);
+			System.out.print(" " + duration / 1000000 + "ms");
+		}
+		System.out.println(String.format(" - best %.1f ns/iteration (%d)", (double) best / iterations, result & 1));
+	}
+
+}
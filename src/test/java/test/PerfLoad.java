@@ -0,0 +1,142 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+
+import be.baur.sda.SDA;
+import be.baur.sdt.xpath.DocumentNavigator;
+import be.baur.sdt.xpath.MappedFileReader;
+import be.baur.sdt.xpath.ParallelParser;
+import be.baur.sdt.xpath.TinyTree;
+
+/**
+ * Compares the parse throughput and memory of loading an SDA document through
+ * a file reader, a memory-mapped reader, the parallel parser, and into a tiny
+ * tree. Usage:
+ *
+ * <pre>
+ * PerfLoad [reader|mapped|parallel|tiny] [file] [runs]
+ * </pre>
+ *
+ * If no file is specified, a document of about 100 MB is generated. The peak
+ * resident set size (Linux only) covers the entire process, so run each reader
+ * in a separate JVM to compare it. The heap retained by the loaded document is
+ * measured after a garbage collection, and is comparable between readers. For
+ * a tiny tree, it is measured again after all of its nodes have been visited.
+ */
+public final class PerfLoad {
+
+	interface Loader {
+		Object load(File file) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		String mode = args.length > 0 ? args[0] : "all";
+		File file = args.length > 1 ? new File(args[1]) : generate(100);
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		System.out.println("File: " + file + " (" + file.length() / (1024 * 1024) + " MB)");
+		if (mode.equals("all") || mode.equals("reader"))
+			test("reader", file, runs, f -> SDA.parse(f));
+		if (mode.equals("all") || mode.equals("mapped"))
+			test("mapped", file, runs, f -> {
+				try (Reader input = new MappedFileReader(f)) { return SDA.parse(input); }
+			});
+		if (mode.equals("all") || mode.equals("parallel"))
+			test("parallel", file, runs, f -> ParallelParser.parse(f));
+		if (mode.equals("all") || mode.equals("tiny"))
+			test("tiny", file, runs, f -> TinyTree.parse(f));
+		System.out.println("Peak RSS: " + peakRSS());
+
+		if (args.length < 2) file.delete();
+	}
+
+
+	private static void test(String name, File file, int runs, Loader loader) throws Exception {
+
+		System.out.print(name + ":");
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < runs; r++) {
+			long start = System.nanoTime();
+			loader.load(file);
+			long duration = System.nanoTime() - start;
+			best = Math.min(best, duration);
+			System.out.print(" " + duration / 1000000 + "ms");
+		}
+		double mbs = (file.length() / (1024.0 * 1024)) / (best / 1e9);
+		System.out.println(String.format(" - best %.1f MB/s", mbs));
+
+		long before = usedHeap();
+		Object document = loader.load(file);
+		long retained = usedHeap() - before;
+		System.out.println(String.format("  retained heap: %.1f MB", retained / (1024.0 * 1024)));
+
+		if (document instanceof TinyTree) { // nodes are created on access, so traverse it
+			int count = count(DocumentNavigator.getInstance().getDescendantAxisIterator(((TinyTree) document).getDocument()));
+			retained = usedHeap() - before;
+			System.out.println(String.format("  retained heap after traversing %d nodes: %.1f MB", count, retained / (1024.0 * 1024)));
+		}
+		if (document == null) System.out.println("  (nothing loaded)"); // keeps the document reachable
+	}
+
+
+	@SuppressWarnings("rawtypes")
+	private static int count(Iterator iterator) {
+		int count = 0;
+		while (iterator.hasNext()) { iterator.next(); ++count; }
+		return count;
+	}
+
+
+	/*
+	 * Returns the heap in use after a garbage collection.
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+
+	/*
+	 * Generates an address book of about the specified size in MB.
+	 */
+	private static File generate(int mb) throws IOException {
+
+		File file = File.createTempFile("perfload", ".sda");
+		try (Writer w = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			w.write("addressbook {\n");
+			long size = 0, i = 0;
+			while (size < mb * 1024L * 1024) {
+				String contact = "\tcontact \"" + i++ + "\" { firstname \"Contact\" lastname \"Número " + i
+					+ "\" phonenumber \"06-" + (10000000 + i) + "\" email \"contact" + i + "@example.com\" }\n";
+				w.write(contact); size += contact.length();
+			}
+			w.write("}\n");
+		}
+		return file;
+	}
+
+
+	/*
+	 * Returns the peak resident set size of this process, if available.
+	 */
+	private static String peakRSS() {
+		try {
+			for (String line : Files.readAllLines(Paths.get("/proc/self/status")))
+				if (line.startsWith("VmHWM:"))
+					return line.substring(6).trim();
+		} catch (IOException e) {
+			// not available on this platform
+		}
+		return "n/a";
+	}
+
+}
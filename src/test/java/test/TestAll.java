@@ -8,6 +8,8 @@ public final class TestAll {
 		test.TestSDAXPath.main(args);
 		System.out.print("\nSDTXPath  : ");
 		test.TestSDTXPath.main(args);
+		System.out.print("\nDateTime  : ");
+		test.TestDateTime.main(args);
 		System.out.print("\nSDTParser : ");
 		test.TestSDTParser.main(args);
 	}
@@ -0,0 +1,96 @@
+package test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Random;
+
+import be.baur.sdt.xpath.function.dtm.DateTimeFunction;
+
+/**
+ * Tests the parsing and formatting of ISO date-times by the date-time functions
+ * against that of {@link DateTimeFormatter#ISO_DATE_TIME}; both the results and
+ * the failures must be the same.
+ */
+public final class TestDateTime {
+
+	public static void main(String[] args) throws Exception {
+
+		Test t = new Test(str -> {
+			String jdk = jdk(str), parsed = parsed(str);
+			return jdk.equals(parsed) ? parsed : "jdk " + jdk + " parsed " + parsed;
+		}, "");
+
+		t.s("D01", "1968-02-28T12:00", "LocalDateTime 1968-02-28T12:00");
+		t.s("D02", "1968-02-28T12:00:00.5", "LocalDateTime 1968-02-28T12:00:00.500");
+		t.s("D03", "1968-02-28T12:00:00.000000001Z", "ZonedDateTime 1968-02-28T12:00:00.000000001Z");
+		t.s("D04", "1968-02-28T12:00-05:30", "ZonedDateTime 1968-02-28T12:00-05:30");
+		t.s("D05", "1968-02-28T12:00+01:00:30", "ZonedDateTime 1968-02-28T12:00+01:00:30");
+		t.s("D06", "2025-03-30T02:30+01:00[Europe/Amsterdam]", "ZonedDateTime 2025-03-30T03:30+02:00[Europe/Amsterdam]");
+		t.s("D07", "2025-10-26T02:30+01:00[Europe/Amsterdam]", "ZonedDateTime 2025-10-26T02:30+01:00[Europe/Amsterdam]");
+		t.s("D08", "1968-02-28T12:00Z[UTC]", "ZonedDateTime 1968-02-28T12:00Z[UTC]");
+		t.s("D09", "1968-02-28t12:00z", "ZonedDateTime 1968-02-28T12:00Z");
+		t.s("D10", "+10000-01-01T00:00", "LocalDateTime +10000-01-01T00:00");
+		t.s("D11", "1968-02-30T12:00", "failed");
+		t.s("D12", "1968-02-28T24:00", "failed");
+		t.s("D13", "1968-02-28T12:00:00.", "LocalDateTime 1968-02-28T12:00");
+		t.s("D14", "1968-02-28T12:00+19:00", "failed");
+		t.s("D15", "1968-02-28T12:00+01:00[Nowhere]", "failed");
+
+		Test f = new Test(str -> str, ""); // reports the number of differences, if any
+		Random random = new Random(1968);
+		String[] zones = { "", "Z", "+01:00", "-05:30", "+01:00:30", "+01:00[Europe/Amsterdam]", "Z[UTC]", "+1", "z" };
+		String[] times = { "", ":00", ":59", ":60", ":07.5", ":07.123456789", ":07.1234567890", ":7" };
+		int failures = 0;
+		for (int i = 0; i < 100000; i++) {
+			String dtms = String.format("%04d-%02d-%02dT%02d:%02d%s%s", random.nextInt(10000), random.nextInt(14),
+				random.nextInt(33), random.nextInt(26), random.nextInt(62), times[random.nextInt(times.length)],
+				zones[random.nextInt(zones.length)]);
+			if (! jdk(dtms).equals(parsed(dtms))) ++failures;
+		}
+		f.s("D16", failures == 0 ? "" : failures + " random strings parsed differently", "");
+
+		failures = 0;
+		String[] regions = { "Europe/Amsterdam", "UTC", "America/New_York", "Asia/Kolkata" };
+		for (int i = 0; i < 100000; i++) {
+			LocalDateTime local = LocalDateTime.of(random.nextInt(12000) - 1000, 1 + random.nextInt(12),
+				1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60),
+				random.nextBoolean() ? 0 : random.nextInt(1000000000));
+			TemporalAccessor dtm;
+			switch (random.nextInt(3)) {
+				case 0: dtm = local; break;
+				case 1: dtm = ZonedDateTime.of(local, ZoneOffset.ofTotalSeconds((random.nextInt(35) - 17) * 3600)); break;
+				default: dtm = ZonedDateTime.of(local, ZoneId.of(regions[random.nextInt(regions.length)]));
+			}
+			if (! DateTimeFormatter.ISO_DATE_TIME.format(dtm).equals(DateTimeFunction.format(dtm))) ++failures;
+		}
+		f.s("D17", failures == 0 ? "" : failures + " random date-times formatted differently", "");
+	}
+
+
+	private static String jdk(String dtms) {
+		try {
+			return describe(DateTimeFormatter.ISO_DATE_TIME.parseBest(dtms, ZonedDateTime::from, LocalDateTime::from));
+		} catch (Exception e) {
+			return "failed";
+		}
+	}
+
+
+	private static String parsed(String dtms) {
+		try {
+			return describe(DateTimeFunction.parse(dtms));
+		} catch (Exception e) {
+			return "failed";
+		}
+	}
+
+
+	private static String describe(TemporalAccessor dtm) {
+		return dtm.getClass().getSimpleName() + " " + dtm;
+	}
+
+}
@@ -1,11 +1,15 @@
 package test;
+import java.io.File;
 import java.util.List;
 
 import org.jaxen.Navigator;
 
 import be.baur.sda.DataNode;
 import be.baur.sda.Node;
+import be.baur.sda.SDA;
 import be.baur.sdt.xpath.DocumentNavigator;
+import be.baur.sdt.xpath.FrozenNode;
+import be.baur.sdt.xpath.TinyTree;
 
 public class TestSDAXPath {
 
@@ -140,6 +144,74 @@ public class TestSDAXPath {
 		t.so("S78", "upper-case(firstname)", bob, "BOB");
 		
 		t.so("S79", "document('"+ file + "')", addressbook, "["+doc.toString()+"]");
+		
+		// the document is cached as a frozen tree, which is shared by all requests
+		long hits = DocumentNavigator.getDocumentCache().getHits();
+		t.so("S80", "document('"+ file + "') = document('"+ file + "')", addressbook, "true");
+		t.so("S81", "count(document('"+ file + "')/..)", addressbook, "1.0");
+		if (DocumentNavigator.getDocumentCache().getHits() - hits != 3) System.out.print("\nS82 failed: expected 3 cache hits ");
+		t.so("S83", "count(document('"+ file + "') | document('"+ file + "'))", addressbook, "1.0");
+		
+		// descendant steps on a frozen document are answered from its name index
+		t.so("S84", "//contact[firstname='Bob']/phonenumber", doc, "[phonenumber \"06-33333333\", phonenumber \"06-44444444\"]");
+		t.so("S85", "count(descendant-or-self::contact)", addressbook, "2.0");
+		t.so("S86", "count(/addressbook/descendant::phonenumber)", doc, "4.0");
+		t.so("S87", "count(//contact[1]//phonenumber)", doc, "2.0");
+		t.so("S88", "descendant::phonenumber[2]", addressbook, "[phonenumber \"06-22222222\"]");
+		t.so("S89", "count(//contact//contact)", doc, "0.0");
+		
+		// sibling axes start at the position of the context node
+		t.so("S90", "/addressbook/contact[2]/phonenumber[2]/preceding-sibling::*[1]", doc, "[phonenumber \"06-33333333\"]");
+		t.so("S91", "/addressbook/contact[1]/firstname/following-sibling::phonenumber[2]", doc, "[phonenumber \"06-22222222\"]");
+		t.so("S92", "count(/addressbook/contact[1]/following-sibling::*)", doc, "1.0");
+		
+		// unions and paths are sorted into document order by ordinals or positions
+		t.so("S93", "//firstname | /addressbook/contact", doc, "["+alice.toString()+", firstname \"Alice\", "+bob.toString()+", firstname \"Bob\"]");
+		t.so("S94", "(/addressbook/contact[2] | /addressbook/contact[1]/phonenumber)[1]", doc, "[phonenumber \"06-11111111\"]");
+		t.so("S95", "/addressbook/contact/phonenumber[2]/preceding::firstname", doc, "[firstname \"Alice\", firstname \"Bob\"]");
+		Node copy = DocumentNavigator.newDocumentNode(SDA.parse("r { a { c \"1\" } b { c \"2\" } a { c \"3\" } }"));
+		t.so("S96", "/r/b/c | /r/a/c", copy, "[c \"1\", c \"2\", c \"3\"]");
+		t.so("S97", "(//c/.. | /r)[last()]", copy, "["+copy.nodes().get(0).nodes().get(2).toString()+"]");
+		
+		// axes are traversed by lightweight iterators
+		t.so("S98", "count(ancestor::*)", alice.nodes().get(0), "2.0");
+		t.so("S99", "name(ancestor-or-self::*[2])", alice.nodes().get(0), "contact");
+		t.so("S100", "self::contact/../contact[2]/preceding-sibling::*", bob, "["+alice.toString()+"]");
+		
+		// equality predicates on the children of a large frozen parent are hashed
+		StringBuilder items = new StringBuilder("r {");
+		for (int k = 0; k < 10; k++) items.append(" i \"v" + k % 3 + "\" { c \"" + k % 4 + "\" }");
+		Node frozen = FrozenNode.freeze(SDA.parse(items.append(" }").toString())).getParent();
+		t.so("S101", "count(/r/i[c='1'])", frozen, "3.0");
+		t.so("S102", "string(/r/i[c='1'][2])", frozen, "v2");
+		t.so("S103", "count(/r/i[.='v0'])", frozen, "4.0");
+		t.so("S104", "count(/r/i['2'=c])", frozen, "2.0");
+		t.so("S105", "count(/r/i[c=1])", frozen, "3.0");
+		t.so("S106", "count(/r/i[c='x'])", frozen, "0.0");
+		
+		// counts and positions on child steps do not select all children
+		t.so("S107", "count(/addressbook/*/phonenumber)", doc, "4.0");
+		t.so("S108", "count(*/*) + count(contact/firstname/node())", addressbook, "6.0");
+		t.so("S109", "/addressbook/contact/phonenumber[last()]", doc, "[phonenumber \"06-22222222\", phonenumber \"06-44444444\"]");
+		t.so("S110", "/addressbook/contact/*[2]", doc, "[phonenumber \"06-11111111\", phonenumber \"06-33333333\"]");
+		t.so("S111", "count(contact/phonenumber[3]) + count(contact[1.5])", addressbook, "0.0");
+		t.so("S112", "(contact/phonenumber)[last()]", addressbook, "[phonenumber \"06-44444444\"]");
+		t.so("S113", "count(/r/i[last()]/c) + count(/r/i/c)", frozen, "11.0");
+		
+		// descendant axes are traversed with an explicit stack
+		t.so("S114", "count(descendant::*) + count(descendant-or-self::node())", addressbook, "17.0");
+		t.so("S115", "count(/r/descendant::*[. = '1'])", frozen, "3.0");
+		
+		// tiny trees are navigated directly, and give the same results
+		TinyTree tiny = TinyTree.parse(new File(file));
+		Object tinydoc = tiny.getDocument();
+		t.so("S116", "/", tinydoc, "["+doc.toString()+"]");
+		t.so("S117", "/addressbook/contact[2]/firstname", tinydoc, "[firstname \"Bob\"]");
+		t.so("S118", "count(//phonenumber) + count(descendant-or-self::node())", tinydoc, "14.0");
+		t.so("S119", "//contact[firstname='Bob']/phonenumber[2]", tinydoc, "[phonenumber \"06-44444444\"]");
+		t.so("S120", "//firstname | /addressbook/contact/phonenumber[2]", tinydoc, "[firstname \"Alice\", phonenumber \"06-22222222\", firstname \"Bob\", phonenumber \"06-44444444\"]");
+		t.so("S121", "name(//phonenumber[2]/preceding-sibling::*[2]/..)", tinydoc, "contact");
+		t.so("S122", "count(ancestor::node()) + count(following-sibling::contact)", TinyTree.of((DataNode) alice).getRoot(), "1.0");
 	}
 
 }
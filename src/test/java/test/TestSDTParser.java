@@ -71,6 +71,7 @@ public final class TestSDTParser {
 		s.s("S28", "transform { foreach \"/i\" { sort \".\" group \".\" } }", "transform { foreach \"/i\" { group \".\" sort \".\" } }");
 		s.s("S29", "transform { foreach \"/i\" { group \".\" println \".\" } }", null);
 		s.s("S30", "transform { foreach \"/i\" { group \".\" foreach \"$sdt:current-group\" { } } }", null);
+		s.s("S31", "transform { key \"k\" { match \"//i\" use \"id\" } }", null);
 		
 		System.out.print("\n            "); /* test invalid SDT */
 		f.s("F01", "transfrom \"\"", "/transfrom: 'transform' statement expected");
@@ -155,6 +156,12 @@ public final class TestSDTParser {
 		f.s("F83", "transform { copy \"/item\" { value \"\" } }", "/transform/copy: statement 'copy' expects no compound statement");
 		
 		f.s("F84", "transform { transform { } }", "/transform/transform: statement 'transform' is not allowed here");
+		
+		f.s("F85", "transform { key \"\" { match \"i\" use \"j\" } }", "/transform/key: statement 'key' requires a key name");
+		f.s("F86", "transform { key \"k\" { match \"i\" } }", "/transform/key: 'use' attribute expected in 'key'");
+		f.s("F87", "transform { if \"1\" { key \"k\" { match \"i\" use \"j\" } } }", "/transform/if/key: statement 'key' is not allowed here");
+		f.s("F88", "transform { key \"k\" { match \"i\" use \"j\" } key \"k\" { match \"i\" use \"j\" } }", "/transform/key[2]: key 'k' cannot be redeclared");
+		f.s("F89", "transform { node \"a\" { use \"j\" } }", "/transform/node/use: attribute 'use' is not allowed here");
 	
 		
 		// test performance
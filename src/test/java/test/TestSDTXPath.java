@@ -7,6 +7,8 @@ import be.baur.sda.DataNode;
 import be.baur.sda.Node;
 import be.baur.sdt.xpath.DocumentNavigator;
 import be.baur.sdt.xpath.SDAXPath;
+import be.baur.sdt.xpath.function.ParseSDAFunction;
+import be.baur.sdt.xpath.function.dtm.FormatDateTimeFunction;
 
 public class TestSDTXPath {
 
@@ -58,6 +60,9 @@ public class TestSDTXPath {
 		t.so("S24", "sdt:compare-string('b','A')", doc, "1.0");
 		t.so("S25", "sdt:compare-string('Ångström','Zulu','en')", doc, "-1.0");
 		t.so("S26", "sdt:compare-string('Ångström','Zulu','sv')", doc, "1.0");
+		t.so("S27", "sdt:compare-string('Résumé','resume','','primary')", doc, "0.0");
+		t.so("S28", "sdt:compare-string('a','A','en','secondary')", doc, "0.0");
+		t.so("S29", "sdt:compare-string('é','e','en','secondary')", doc, "1.0");
 
 		t.so("S31", "sdt:tokenize('')", doc, "[]");
 		t.so("S32", "sdt:tokenize('abc')", doc, "abc");
@@ -66,6 +71,9 @@ public class TestSDTXPath {
 		t.so("S35", "sdt:tokenize('127.0.0.1:80','[\\.:]')", doc, "[127, 0, 0, 1, 80]");
 		t.so("S36", "sdt:tokenize('1;2;;3;',';')", doc, "[1, 2, 3]");
 		t.so("S37", "sdt:tokenize('1; 2; ; 3; ','; ',true())", doc, "[1, 2, , 3, ]");
+		t.so("S38", "sdt:tokenize('1;2;;3;',';',true())", doc, "[1, 2, , 3, ]");
+		t.so("S39", "sdt:tokenize('a1b22c','[0-9]+')", doc, "[a, b, c]");
+		t.so("S40", "sdt:tokenize('a1b22c','[0-9]+',true())", doc, "[a, b, c]");
 		
 		t.so("S41", "sdt:render-sda('')", doc, "");
 		t.so("S42", "sdt:render-sda(unknown)", doc, "");
@@ -75,6 +83,13 @@ public class TestSDTXPath {
 		t.so("F46", "sdt:parse-sda('')", doc, "unexpected end of input");
 		t.so("F47", "sdt:parse-sda('greeting message \"hello\" }')", doc, "unexpected character 'm'");
 		t.so("S48", "sdt:parse-sda('greeting { message \"hello\" }')", doc, "[greeting { message \"hello\" }]");
+		ParseSDAFunction.getCache().setMaxSize(16);
+		t.so("S49", "count(sdt:parse-sda('greeting \"hi\"') | sdt:parse-sda('greeting \"hi\"'))", doc, "1.0");
+		t.so("S50", "string(sdt:parse-sda('greeting \"hi\"'))", doc, "hi");
+		if (ParseSDAFunction.getCache().getHits() != 2) System.out.print("\nS50 failed: expected 2 cache hits ");
+		t.so("S155", "count(sdt:parse-sda('greeting \"hi\"')/..)", doc, "1.0");
+		ParseSDAFunction.getCache().setMaxSize(0);
+		t.so("S156", "count(sdt:parse-sda('greeting \"hi\"')/..)", doc, "0.0");
 		
 		System.out.print("\n	    ");
 		
@@ -104,6 +119,9 @@ public class TestSDTXPath {
 		t.so("S72", "sdt:parse-dateTime('19700101000000+00:00','yyyyMMddHHmmssz')", doc, "1970-01-01T00:00:00Z");
 		t.so("F73", "sdt:parse-dateTime('a','yyyyMMddHHmmss')", doc, "parse-dateTime() failed to parse 'a'.");
 		t.so("F74", "sdt:parse-dateTime()", doc, "parse-dateTime() requires two arguments.");
+		long hits = FormatDateTimeFunction.getPatternCache().getHits();
+		t.so("S60", "sdt:parse-dateTime(sdt:format-dateTime('1968-02-28T12:00','yyyy/MM/dd HH:mm'),'yyyy/MM/dd HH:mm')", doc, "1968-02-28T12:00:00");
+		if (FormatDateTimeFunction.getPatternCache().getHits() - hits != 2) System.out.print("\nS60 failed: expected 2 cache hits ");
 		
 		t.so("S75", "sdt:dateTime-to-timezone('2025-03-30T01:00:00Z', 'Europe/Amsterdam')", doc, "2025-03-30T03:00:00+02:00[Europe/Amsterdam]");
 		t.so("S76", "sdt:dateTime-to-timezone('2025-10-26T00:00:00Z', 'Europe/Amsterdam')", doc, "2025-10-26T02:00:00+02:00[Europe/Amsterdam]");
@@ -166,6 +184,33 @@ public class TestSDTXPath {
 		t.so("S127", "sdt:subtract-dateTimes('2025-03-30T01:00:00+01:00','2025-03-30T03:00:00+02:00') div 3600", doc, "-1.0");
 		t.so("S128", "sdt:subtract-dateTimes('2025-10-26T02:00:00+02:00','2025-10-26T03:00:00+01:00') div 3600", doc, "-2.0");
 		t.so("S129", "sdt:subtract-dateTimes() div 3600000", doc, "subtract-dateTimes() requires two arguments.");
+
+		// time zones are resolved once, and fixed offsets bypass the zone rules
+		t.so("S132", "sdt:dateTime-to-timezone('2025-03-30T01:00:00.5+02:00', '-05:30')", doc, "2025-03-29T17:30:00.5-05:30");
+		t.so("S133", "sdt:dateTime-to-timezone('2025-03-30T01:00:00Z', 'Z')", doc, "2025-03-30T01:00:00Z");
+		t.so("S134", "sdt:dateTime-to-timezone('2025-03-30T03:00:00+02:00[Europe/Amsterdam]', 'Europe/Amsterdam')", doc, "2025-03-30T03:00:00+02:00[Europe/Amsterdam]");
+
+		t.so("S135", "fn:matches('abracadabra', 'bra')", doc, "true");
+		t.so("S136", "fn:matches('abracadabra', '^bra')", doc, "false");
+		t.so("S137", "fn:matches('Abracadabra', '^a.*A$', 'i')", doc, "true");
+		t.so("S138", "fn:matches('a.b', 'a.b', 'q') and not(fn:matches('axb', 'a.b', 'q'))", doc, "true");
+		t.so("F139", "fn:matches('abc', '(', '')", doc, "matches() pattern '(' is invalid.");
+		t.so("F140", "fn:matches('abc', 'a', 'z')", doc, "matches() flags 'z' are invalid.");
+		t.so("S141", "fn:replace('abracadabra', 'bra', '*')", doc, "a*cada*");
+		t.so("S142", "fn:replace('abracadabra', 'a(.)', 'a$1$1')", doc, "abbraccaddabbra");
+		t.so("S143", "fn:replace('a.b.c', '.', '$', 'q')", doc, "a$b$c");
+		t.so("F144", "fn:replace('abc', 'x*', '-')", doc, "replace() pattern 'x*' matches a zero length string.");
+		t.so("F145", "fn:replace('abc')", doc, "replace() requires three or four arguments.");
+
+		t.so("S146", "sdt:min(/addressbook/contact)", doc, "1.0");
+		t.so("S147", "sdt:max(/addressbook/contact)", doc, "2.0");
+		t.so("S148", "sdt:avg(/addressbook/contact)", doc, "1.5");
+		t.so("S149", "sdt:avg(/addressbook/contact/firstname)", doc, "NaN");
+		t.so("S150", "sdt:min(/addressbook/nothing)", doc, "NaN");
+		t.so("S151", "sdt:statistics(/addressbook/contact)", doc, "[statistics { count \"2\" sum \"3\" min \"1\" max \"2\" avg \"1.5\" }]");
+		t.so("S152", "string(sdt:statistics(/addressbook/contact)/avg)", doc, "1.5");
+		t.so("F153", "sdt:min('1')", doc, "min() expects a node-set.");
+		t.so("F154", "sdt:max()", doc, "max() requires one argument.");
 	}
 
 }
@@ -1,7 +1,10 @@
 package test;
 
+import java.io.File;
+import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.io.Writer;
 
 import be.baur.sda.DataNode;
@@ -9,6 +12,9 @@ import be.baur.sda.SDA;
 import be.baur.sdt.SDT;
 import be.baur.sdt.TransformContext;
 import be.baur.sdt.transform.Transform;
+import be.baur.sdt.transform.TransformInput;
+import be.baur.sdt.xpath.FrozenNode;
+import be.baur.sdt.xpath.TinyTree;
 
 public final class TestTransform {
 	
@@ -27,5 +33,169 @@ public final class TestTransform {
 		SDA.format(w, node);
 		w.write(">>\n");
 		w.flush();
+
+		// test streaming and lazy execution against regular execution on the same input
+		String abook = TestTransform.class.getResource("/addressbook.sda").getFile();
+		TransformContext nc = new TransformContext.Builder().setWriter(SDT.nullWriter()).build();
+		
+		Test s = new Test(str -> {
+			try {
+				Transform t = SDT.parse(new StringReader(str));
+				String streamed = String.valueOf(t.execute(nc, TransformInput.streamed(new FileReader(abook))));
+				String executed = String.valueOf(t.execute(nc, TransformInput.of(SDA.parse(new File(abook)))));
+				String mapped = String.valueOf(t.execute(nc, TransformInput.of(new File(abook))));
+				if (! mapped.equals(executed)) return "mapped " + mapped + " executed " + executed;
+				String lazy = String.valueOf(t.execute(nc, TransformInput.lazy(new File(abook))));
+				if (! lazy.equals(executed)) return "lazy " + lazy + " executed " + executed;
+				return streamed.equals(executed) ? streamed : "streamed " + streamed + " executed " + executed;
+			} catch (Exception e) {
+				return e.getMessage();
+			}
+		}, "");
+		
+		System.out.print("Streaming: ");
+		s.s("S01", "transform { node \"names\" { foreach \"/addressbook/contact\" { node \"name\" { value \"firstname\" } } } }", 
+			"names { name \"Alice\" name \"Bob\" }");
+		s.s("S02", "transform { node \"n\" { foreach \"addressbook/contact\" { node \"p\" { value \"$sdt:position\" } } } }", 
+			"n { p \"1.0\" p \"2.0\" }");
+		s.s("S03", "transform { node \"n\" { foreach \"/addressbook/*\" { foreach \"phonenumber\" { node \"p\" { value \"../firstname\" } } } } }", 
+			"n { p \"Alice\" p \"Alice\" p \"Bob\" p \"Bob\" }");
+		s.s("S04", "transform { node \"n\" { value \"'x'\" foreach \"/addressbook/contact\" { if \". = 2\" { copy \"firstname\" } } } }", 
+			"n \"x\" { firstname \"Bob\" }");
+		s.s("S05", "transform { node \"n\" { foreach \"/addressbook/contact\" { node \"c\" { value \"count(phonenumber)\" copy \"phonenumber[1]\" } } } }",
+			"n { c \"2.0\" { phonenumber \"06-11111111\" } c \"2.0\" { phonenumber \"06-33333333\" } }");
+		s.s("S06", "transform { node \"n\" { foreach \"/addressbook/kontact\" { node \"p\" { } } } }", "n { }");
+		s.s("S07", "transform { variable \"f\" { select \"''\" } node \"n\" { foreach \"/addressbook/contact\" { variable \"f\" { select \"string(firstname)\" } variable \"p\" { select \"phonenumber[1]\" } node \"p\" { value \"concat($f,$p)\" } } } }", 
+			"n { p \"Alice06-11111111\" p \"Bob06-33333333\" }");
+		
+		System.out.print("\n           ");
+		s.s("F01", "transform { foreach \"/addressbook/contact\" { sort \"firstname\" } }", 
+			"statement is not streamable: sorting requires all records");
+		s.s("F02", "transform { foreach \"/addressbook/contact\" { group \"firstname\" print \".\" } }", 
+			"statement is not streamable: grouping requires all records");
+		s.s("F03", "transform { foreach \"/addressbook/contact\" { print \"$sdt:last\" } }", 
+			"statement is not streamable: the number of records is unknown in a streamed foreach");
+		s.s("F04", "transform { foreach \"/addressbook/contact\" { print \"/addressbook\" } }", 
+			"statement is not streamable: absolute paths are not streamable");
+		s.s("F05", "transform { foreach \"/addressbook/contact\" { print \"following-sibling::contact\" } }", 
+			"statement is not streamable: axis 'following-sibling' is not streamable");
+		s.s("F06", "transform { foreach \"/addressbook/contact\" { print \"../../addressbook\" } }", 
+			"statement is not streamable: parent steps may not leave the streamed record");
+		s.s("F07", "transform { print \"count(addressbook/contact)\" foreach \"/addressbook/contact\" { } }", 
+			"statement is not streamable: expression refers to the input outside of the streamed foreach");
+		s.s("F08", "transform { foreach \"/addressbook/contact/firstname\" { print \".\" } }", 
+			"no foreach statement selects the records of the input root node");
+		s.s("F09", "transform { variable \"c\" { select \"''\" } foreach \"/addressbook/contact\" { variable \"c\" { select \"firstname\" } } }", 
+			"statement is not streamable: nodes of a streamed record may not be assigned to variable 'c' declared outside the streamed foreach");
+		s.s("F10", "transform { variable \"c\" { select \"''\" } foreach \"/addressbook/contact\" { variable \"c\" { select \"$sdt:current\" } } }", 
+			"statement is not streamable: nodes of a streamed record may not be assigned to variable 'c' declared outside the streamed foreach");
+		
+		// test projected execution against regular execution on the same input
+		Test p = new Test(str -> {
+			try {
+				Transform t = SDT.parse(new StringReader(str));
+				String projected = String.valueOf(t.execute(nc, TransformInput.projected(new FileReader(abook))));
+				String executed = String.valueOf(t.execute(nc, TransformInput.of(new FileReader(abook))));
+				String parsed = String.valueOf(t.execute(nc, TransformInput.of(SDA.parse(new File(abook)))));
+				if (! executed.equals(parsed)) return "executed " + executed + " parsed " + parsed;
+				return projected.equals(executed) ? projected : "projected " + projected + " executed " + executed;
+			} catch (Exception e) {
+				return e.getMessage();
+			}
+		}, "");
+		
+		System.out.print("\nProjection: ");
+		p.s("P01", "transform { node \"names\" { foreach \"/addressbook/contact\" { node \"name\" { value \"firstname\" } } } }", 
+			"names { name \"Alice\" name \"Bob\" }");
+		p.s("P02", "transform { node \"n\" { foreach \"/addressbook/contact\" { sort \"firstname\" { reverse \"true()\" } node \"p\" { value \"phonenumber[2]\" } } } }", 
+			"n { p \"06-44444444\" p \"06-22222222\" }");
+		p.s("P03", "transform { variable \"c\" { select \"/addressbook/contact[2]\" } node \"n\" { value \"$c/phonenumber[1]\" } }", 
+			"n \"06-33333333\"");
+		p.s("P04", "transform { node \"n\" { copy \"/addressbook/contact[firstname = 'Alice']\" } }", 
+			"n { contact \"1\" { firstname \"Alice\" phonenumber \"06-11111111\" phonenumber \"06-22222222\" } }");
+		p.s("P05", "transform { node \"n\" { value \"count(//phonenumber)\" } }", "n \"4.0\"");
+		p.s("P06", "transform { node \"n\" { foreach \"/addressbook/contact/firstname\" { node \"p\" { value \"../phonenumber[last()]\" } } } }", 
+			"n { p \"06-22222222\" p \"06-44444444\" }");
+		p.s("P07", "transform { node \"n\" { foreach \"addressbook/contact\" { node \"c\" { value \"count(*)\" } } } }", 
+			"n { c \"3.0\" c \"3.0\" }");
+		p.s("P08", "transform { node \"n\" { foreach \"/addressbook/contact\" { group \"name()\" node \"g\" { value \"count($sdt:current-group/phonenumber)\" } } } }", 
+			"n { g \"4.0\" }");
+		p.s("P09", "transform { node \"n\" { value \"sdt:render-sda(/addressbook/contact[2]/firstname)\" } }", 
+			"n \"firstname \\\"Bob\\\"\"");
+		p.s("P10", "transform { key \"k\" { match \"/addressbook/contact\" use \"firstname\" } node \"n\" { value \"sdt:key('k','Bob')/phonenumber[2]\" } }", 
+			"n \"06-44444444\"");
+		
+		// test execution on a frozen input against execution on a regular input
+		FrozenNode frozen = FrozenNode.freeze(SDA.parse(new File(abook)));
+		Test z = new Test(str -> {
+			try {
+				Transform t = SDT.parse(new StringReader(str));
+				String fromfrozen = String.valueOf(t.execute(nc, TransformInput.of(frozen)));
+				String executed = String.valueOf(t.execute(nc, TransformInput.of(SDA.parse(new File(abook)))));
+				return fromfrozen.equals(executed) ? fromfrozen : "frozen " + fromfrozen + " executed " + executed;
+			} catch (Exception e) {
+				return e.getMessage();
+			}
+		}, "");
+		
+		System.out.print("\nFrozen: ");
+		z.s("Z01", "transform { node \"n\" { copy \"/addressbook/contact[2]/firstname\" } }", 
+			"n { firstname \"Bob\" }");
+		z.s("Z02", "transform { node \"n\" { value \"name(sdt:document-node(/addressbook)/*)\" } }", 
+			"n \"addressbook\"");
+		z.s("Z03", "transform { node \"n\" { value \"count(sdt:document-node(/addressbook/contact[1])/contact/*)\" } }", 
+			"n \"3.0\"");
+		try {
+			frozen.add(new DataNode("contact")); System.out.print("Z04 FAILED!");
+		} catch (UnsupportedOperationException e) {
+			System.out.print("Z04 ");
+		}
+		
+		System.out.print("\nKeys: ");
+		z.s("K01", "transform { key \"k\" { match \"/addressbook/contact\" use \"firstname\" } node \"n\" { value \"sdt:key('k','Bob')/phonenumber[1]\" } }", 
+			"n \"06-33333333\"");
+		z.s("K02", "transform { key \"k\" { match \"//contact\" use \"phonenumber\" } node \"n\" { value \"count(sdt:key('k', //phonenumber))\" } }", 
+			"n \"2.0\"");
+		z.s("K03", "transform { key \"k\" { match \"//phonenumber\" use \"../firstname\" } node \"n\" { foreach \"/addressbook/contact\" { node \"c\" { value \"count(sdt:key('k', firstname))\" } } } }", 
+			"n { c \"2.0\" c \"2.0\" }");
+		z.s("K04", "transform { key \"k\" { match \"//contact\" use \"firstname\" } node \"n\" { value \"count(sdt:key('k','Carol'))\" } }", 
+			"n \"0.0\"");
+		
+		System.out.print("\nConditions: ");
+		z.s("E01", "transform { node \"n\" { if \"/addressbook/contact[firstname='Bob']/phonenumber\" { value \"'yes'\" } } }", 
+			"n \"yes\"");
+		z.s("E02", "transform { node \"n\" { if \"not(//contact[phonenumber='06-55555555'])\" { value \"'yes'\" } } }", 
+			"n \"yes\"");
+		z.s("E03", "transform { node \"n\" { if \"count(/addressbook/contact/phonenumber) > 0\" { value \"'yes'\" } } }", 
+			"n \"yes\"");
+		z.s("E04", "transform { node \"n\" { if \"count(//contact[firstname='Carol']) != 0\" { value \"'yes'\" } if \"count(//contact[firstname='Carol']) <= 0\" { value \"'no'\" } } }", 
+			"n \"no\"");
+		z.s("E05", "transform { node \"n\" { foreach \"/addressbook/contact\" { choose { when \"0 = count(phonenumber[2]/following-sibling::*)\" { node \"c\" { value \"firstname\" } } } } } }", 
+			"n { c \"Alice\" c \"Bob\" }");
+		
+		// test execution on a tiny tree against execution on a regular input
+		TinyTree tiny = TinyTree.parse(new File(abook));
+		Test y = new Test(str -> {
+			try {
+				Transform t = SDT.parse(new StringReader(str));
+				String fromtiny = String.valueOf(t.execute(nc, TransformInput.of(tiny)));
+				String executed = String.valueOf(t.execute(nc, TransformInput.of(SDA.parse(new File(abook)))));
+				return fromtiny.equals(executed) ? fromtiny : "tiny " + fromtiny + " executed " + executed;
+			} catch (Exception e) {
+				return e.getMessage();
+			}
+		}, "");
+		
+		System.out.print("\nTiny: ");
+		y.s("Y01", "transform { node \"n\" { copy \"/addressbook/contact[2]\" } }", 
+			"n { contact \"2\" { firstname \"Bob\" phonenumber \"06-33333333\" phonenumber \"06-44444444\" } }");
+		y.s("Y02", "transform { node \"n\" { foreach \"//contact\" { node \"c\" { value \"concat(firstname, ':', count(phonenumber))\" } } } }", 
+			"n { c \"Alice:2.0\" c \"Bob:2.0\" }");
+		y.s("Y03", "transform { node \"n\" { value \"sdt:render-sda(/addressbook/contact[1]/phonenumber[2])\" } }", 
+			"n \"phonenumber \\\"06-22222222\\\"\"");
+		y.s("Y04", "transform { node \"n\" { value \"name(sdt:document-node(//contact[2])/*)\" } }", 
+			"n \"contact\"");
+		y.s("Y05", "transform { key \"k\" { match \"//contact\" use \"phonenumber\" } node \"n\" { value \"sdt:key('k','06-33333333')/firstname\" } }", 
+			"n \"Bob\"");
 	}
 }